@@ -0,0 +1,9 @@
+package com.foodchain.common.dto.device;
+
+import jakarta.validation.constraints.NotEmpty;
+
+import java.util.List;
+
+public record BulkCreateDevicesRequest(
+        @NotEmpty List<CreateDeviceRequest> devices
+) {}
@@ -0,0 +1,9 @@
+package com.foodchain.common.dto.device;
+
+import java.util.List;
+
+public record BulkCreateDevicesResultDto(
+        int created,
+        int failed,
+        List<BulkCreateItemResultDto> results
+) {}
@@ -0,0 +1,7 @@
+package com.foodchain.common.dto.device;
+
+public record BulkCreateItemResultDto(
+        int index,
+        String id,
+        String error
+) {}
@@ -0,0 +1,11 @@
+package com.foodchain.common.dto.device;
+
+import java.util.List;
+
+public record DeviceChangesDto(
+        List<DeviceDto> devices,
+        List<String> deletedIds,
+        List<DevicePresenceDto> presence,
+        String cursor,
+        boolean reset
+) {}
@@ -0,0 +1,8 @@
+package com.foodchain.common.dto.device;
+
+import java.util.List;
+
+public record DevicePageDto(
+        List<DeviceDto> devices,
+        String nextCursor
+) {}
@@ -0,0 +1,6 @@
+package com.foodchain.common.dto.device;
+
+public record DevicePresenceDto(
+        String id,
+        boolean isOnline
+) {}
@@ -0,0 +1,16 @@
+package com.foodchain.common.dto.device;
+
+public record TelemetryAggregateDto(
+        String metric,
+        String window,
+        long windowStart,
+        long windowEnd,
+        boolean complete,
+        long count,
+        double min,
+        double max,
+        double mean,
+        double p50,
+        double p95,
+        double p99
+) {}
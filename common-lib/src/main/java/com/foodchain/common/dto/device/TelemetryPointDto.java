@@ -0,0 +1,9 @@
+package com.foodchain.common.dto.device;
+
+public record TelemetryPointDto(
+        long timestamp,
+        double min,
+        double max,
+        double avg,
+        long count
+) {}
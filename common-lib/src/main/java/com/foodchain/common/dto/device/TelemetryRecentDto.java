@@ -0,0 +1,9 @@
+package com.foodchain.common.dto.device;
+
+import java.util.Map;
+
+public record TelemetryRecentDto(
+        String deviceId,
+        long[] timestamps,
+        Map<String, Double[]> fields
+) {}
@@ -0,0 +1,11 @@
+package com.foodchain.common.dto.mqtt;
+
+public record CommandResultDto(
+        String correlationId,
+        String deviceId,
+        String controlId,
+        String value,
+        String status,
+        Long ackLatencyMs,
+        String message
+) {}
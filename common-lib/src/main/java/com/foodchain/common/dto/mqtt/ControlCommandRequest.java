@@ -0,0 +1,7 @@
+package com.foodchain.common.dto.mqtt;
+
+import jakarta.validation.constraints.NotNull;
+
+public record ControlCommandRequest(
+        @NotNull String value
+) {}
@@ -0,0 +1,15 @@
+package com.foodchain.common.dto.mqtt;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+
+public record GroupCommandRequest(
+        String type,
+        String locationLabel,
+        Double minLatitude,
+        Double maxLatitude,
+        Double minLongitude,
+        Double maxLongitude,
+        @NotBlank String controlName,
+        @NotNull String value
+) {}
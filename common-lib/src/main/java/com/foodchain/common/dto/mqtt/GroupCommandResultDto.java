@@ -0,0 +1,10 @@
+package com.foodchain.common.dto.mqtt;
+
+public record GroupCommandResultDto(
+        String correlationId,
+        int matched,
+        int published,
+        int failed,
+        int rejected,
+        long durationMs
+) {}
@@ -0,0 +1,10 @@
+package com.foodchain.common.dto.mqtt;
+
+public record IngestJournalStatusDto(
+        boolean enabled,
+        long lastSequence,
+        int segments,
+        long bytes,
+        Long oldestReceivedAt,
+        int failedMessages
+) {}
@@ -0,0 +1,8 @@
+package com.foodchain.common.dto.mqtt;
+
+public record IngestReplayResultDto(
+        long scanned,
+        long replayed,
+        long failed,
+        long durationMs
+) {}
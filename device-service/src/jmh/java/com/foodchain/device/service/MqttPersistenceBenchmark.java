@@ -0,0 +1,87 @@
+package com.foodchain.device.service;
+
+import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
+import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
+import org.eclipse.paho.client.mqttv3.internal.MqttPersistentData;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.eclipse.paho.client.mqttv3.persist.MqttDefaultFilePersistence;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures one QoS 1 in-flight lifecycle (put on publish, remove on PUBACK) against the
+ * Paho client persistence options selectable through {@code MQTT_PERSISTENCE}, plus Paho's
+ * own file persistence for reference. {@code mapped-sync} forces every record to disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MqttPersistenceBenchmark {
+
+    @Param({"memory", "file", "mapped", "mapped-sync"})
+    private String store;
+
+    @Param({"256"})
+    private int payloadSize;
+
+    private Path directory;
+    private MqttClientPersistence persistence;
+    private MqttPersistentData message;
+    private int messageId;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, MqttPersistenceException {
+        directory = Files.createTempDirectory("mqtt-persistence-bench");
+        persistence = switch (store) {
+            case "memory" -> new MemoryPersistence();
+            case "file" -> new MqttDefaultFilePersistence(directory.toString());
+            case "mapped" -> new MappedSegmentPersistence(directory, 16 * 1024 * 1024, false);
+            case "mapped-sync" -> new MappedSegmentPersistence(directory, 16 * 1024 * 1024, true);
+            default -> throw new IllegalArgumentException(store);
+        };
+        persistence.open("bench-client", "tcp://localhost:1883");
+
+        byte[] header = new byte[4];
+        byte[] payload = new byte[payloadSize];
+        ThreadLocalRandom.current().nextBytes(payload);
+        message = new MqttPersistentData("s-0", header, 0, header.length, payload, 0, payload.length);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, MqttPersistenceException {
+        persistence.close();
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void putThenRemove() throws MqttPersistenceException {
+        messageId = messageId % 65535 + 1;
+        String key = "s-" + messageId;
+        persistence.put(key, message);
+        persistence.remove(key);
+    }
+}
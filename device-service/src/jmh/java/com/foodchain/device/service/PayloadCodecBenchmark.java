@@ -0,0 +1,72 @@
+package com.foodchain.device.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ingest and transcoding cost of the two device payload encodings: reading the numeric
+ * fields of a telemetry payload through {@link JsonFieldExtractor}, and converting a
+ * payload between JSON and CBOR with {@link PayloadCodec}, on an 89-byte JSON telemetry
+ * payload and its CBOR form.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadCodecBenchmark {
+
+    private static final String TELEMETRY =
+            "{\"ts\":1718000000000,\"temperature\":21.5,\"humidity\":41.2,\"battery\":87,\"rssi\":-67,\"co2\":612}";
+
+    private PayloadCodec codec;
+    private JsonFieldExtractor extractor;
+    private byte[] json;
+    private byte[] cbor;
+
+    @Setup
+    public void setup() throws IOException {
+        codec = new PayloadCodec(new ObjectMapper());
+        extractor = new JsonFieldExtractor(codec);
+        json = TELEMETRY.getBytes(StandardCharsets.UTF_8);
+        cbor = codec.toCbor(json);
+    }
+
+    @Benchmark
+    public TelemetrySample readNumbersJson() throws IOException {
+        TelemetrySample sample = new TelemetrySample(0);
+        extractor.readNumbers(json, sample);
+        return sample;
+    }
+
+    @Benchmark
+    public TelemetrySample readNumbersCbor() throws IOException {
+        TelemetrySample sample = new TelemetrySample(0);
+        extractor.readNumbers(cbor, sample);
+        return sample;
+    }
+
+    @Benchmark
+    public byte[] jsonToCbor() throws IOException {
+        return codec.toCbor(json);
+    }
+
+    @Benchmark
+    public byte[] cborToJson() throws IOException {
+        return codec.toJson(cbor);
+    }
+}
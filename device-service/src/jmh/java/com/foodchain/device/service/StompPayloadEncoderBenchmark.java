@@ -0,0 +1,82 @@
+package com.foodchain.device.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost per outbound MESSAGE frame in {@link StompPayloadEncoder}:
+ * <ul>
+ *   <li>{@code json} — JSON payload to a default subscription, passed through;</li>
+ *   <li>{@code cbor} — JSON payload to an {@code encoding:cbor} subscription, with a new
+ *       payload array every frame so each one is transcoded;</li>
+ *   <li>{@code cbor-fanout} — the same payload array to many CBOR subscribers, as the
+ *       broker fans one message out, so the cached conversion is reused.</li>
+ * </ul>
+ * The {@code cbor} case includes copying the payload array.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StompPayloadEncoderBenchmark {
+
+    private static final String SESSION_ID = "session-1";
+
+    @Param({"json", "cbor", "cbor-fanout"})
+    private String subscription;
+
+    private StompPayloadEncoder encoder;
+    private byte[] payload;
+    private SimpMessageHeaderAccessor template;
+
+    @Setup
+    public void setup() {
+        encoder = new StompPayloadEncoder(new PayloadCodec(new ObjectMapper()), new SimpleMeterRegistry());
+
+        SimpMessageHeaderAccessor subscribe = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        subscribe.setSessionId(SESSION_ID);
+        subscribe.setSubscriptionId("sub-0");
+        subscribe.setDestination("/topic/devices/*/telemetry");
+        if (!subscription.equals("json")) {
+            subscribe.setNativeHeader(StompPayloadEncoder.ENCODING_HEADER, StompPayloadEncoder.CBOR_ENCODING);
+        }
+        encoder.preSend(MessageBuilder.createMessage(new byte[0], subscribe.getMessageHeaders()), null);
+
+        payload = "{\"ts\":1718000000000,\"temperature\":21.5,\"humidity\":41.2,\"battery\":87,\"rssi\":-67,\"co2\":612}"
+                .getBytes(StandardCharsets.UTF_8);
+        template = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        template.setSessionId(SESSION_ID);
+        template.setSubscriptionId("sub-0");
+        template.setDestination("/topic/devices/11111111-1111-1111-1111-111111111111/telemetry");
+        template.setContentType(MimeTypeUtils.APPLICATION_JSON);
+    }
+
+    @Benchmark
+    public Message<?> encode() {
+        byte[] body = subscription.equals("cbor") ? payload.clone() : payload;
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.copyHeaders(template.toMap());
+        return encoder.preSend(MessageBuilder.createMessage(body, headers.getMessageHeaders()), null);
+    }
+}
@@ -0,0 +1,146 @@
+package com.foodchain.device.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes telemetry MESSAGE frames for 50 devices through {@link TelemetryBatcher} on one
+ * wildcard subscription and counts what reaches the socket: {@code frames} and
+ * {@code bytes} are STOMP-encoded frames as the client would receive them (WebSocket
+ * framing excluded). {@code batchSize = 0} is the unbatched baseline; divide
+ * {@code frames} and {@code bytes} by {@code readings} for the cost per reading. The window is longer
+ * than an iteration, so only the size limit flushes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class TelemetryBatchingBenchmark {
+
+    private static final int DEVICES = 50;
+    private static final String SESSION_ID = "session-1";
+    private static final String SUBSCRIPTION_ID = "sub-0";
+
+    @Param({"0", "10", "100"})
+    private int batchSize;
+
+    private final StompEncoder encoder = new StompEncoder();
+    private TelemetryBatcher batcher;
+    private TelemetryConflator conflator;
+    private Message<byte[]>[] messages;
+    private Wire wire;
+    private int next;
+    private long messageId;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Wire {
+
+        public long readings;
+        public long frames;
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            readings = 0;
+            frames = 0;
+            bytes = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        MessageChannel socket = (message, timeout) -> {
+            count((byte[]) message.getPayload(), SimpMessageHeaderAccessor.getDestination(message.getHeaders()));
+            return true;
+        };
+        ObjectMapper objectMapper = new ObjectMapper();
+        conflator = new TelemetryConflator(socket, meterRegistry);
+        batcher = new TelemetryBatcher(socket, conflator, objectMapper, new PayloadCodec(objectMapper), meterRegistry);
+        ReflectionTestUtils.setField(batcher, "maxWindowMs", 60_000L);
+        ReflectionTestUtils.setField(batcher, "maxSize", 1000);
+
+        SimpMessageHeaderAccessor subscribe = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        subscribe.setSessionId(SESSION_ID);
+        subscribe.setSubscriptionId(SUBSCRIPTION_ID);
+        subscribe.setDestination("/topic/devices/*/telemetry");
+        if (batchSize > 0) {
+            subscribe.setNativeHeader(TelemetryBatcher.BATCH_SIZE_HEADER, Integer.toString(batchSize));
+        }
+        batcher.preSend(MessageBuilder.createMessage(new byte[0], subscribe.getMessageHeaders()), socket);
+
+        messages = new Message[DEVICES];
+        for (int i = 0; i < DEVICES; i++) {
+            SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+            headers.setSessionId(SESSION_ID);
+            headers.setSubscriptionId(SUBSCRIPTION_ID);
+            headers.setDestination("/topic/devices/" + UUID.randomUUID() + "/telemetry");
+            byte[] payload = ("{\"temperature\":" + (20 + i % 10) + ".5,\"humidity\":41.2,\"battery\":87}")
+                    .getBytes(StandardCharsets.UTF_8);
+            messages[i] = MessageBuilder.createMessage(payload, headers.getMessageHeaders());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        batcher.shutdown();
+        conflator.shutdown();
+    }
+
+    @Benchmark
+    public void send(Wire wire) {
+        this.wire = wire;
+        wire.readings++;
+        next = next + 1 == DEVICES ? 0 : next + 1;
+        Message<byte[]> message = messages[next];
+        if (batcher.preSend(message, null) != null) {
+            count(message.getPayload(), SimpMessageHeaderAccessor.getDestination(message.getHeaders()));
+        }
+    }
+
+    private void count(byte[] payload, String destination) {
+        StompHeaderAccessor stomp = StompHeaderAccessor.create(StompCommand.MESSAGE);
+        stomp.setDestination(destination);
+        stomp.setSubscriptionId(SUBSCRIPTION_ID);
+        stomp.setMessageId(Long.toString(messageId++));
+        stomp.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        stomp.setContentLength(payload.length);
+        byte[] frame = encoder.encode(stomp.getMessageHeaders(), payload);
+        if (wire != null) {
+            wire.frames++;
+            wire.bytes += frame.length;
+        }
+    }
+}
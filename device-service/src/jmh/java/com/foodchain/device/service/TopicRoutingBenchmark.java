@@ -0,0 +1,81 @@
+package com.foodchain.device.service;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the original {@code messageArrived} parsing (platform-charset payload string,
+ * {@code topic.split("/")} and a switch on the type) with {@link MqttTopicRouter}.
+ * Run with {@code -prof gc} to see the allocation difference.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TopicRoutingBenchmark {
+
+    private static final String[] TOPICS = {
+            "devices/11111111-1111-1111-1111-111111111111/telemetry",
+            "devices/22222222-2222-2222-2222-222222222222/status",
+            "devices/33333333-3333-3333-3333-333333333333/control",
+            "devices/44444444-4444-4444-4444-444444444444/telemetry/temperature"
+    };
+
+    private final MqttTopicRouter router = new MqttTopicRouter();
+    private MqttMessage message;
+    private int next;
+
+    @Setup
+    public void setup() {
+        MqttMessageHandler noop = (deviceId, msg, sequence) -> { };
+        router.register("status", noop);
+        router.register("control", noop);
+        router.register("telemetry", true, noop);
+        message = new MqttMessage("{\"temperature\":21.5,\"humidity\":40}".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String nextTopic() {
+        next = (next + 1) & 3;
+        return TOPICS[next];
+    }
+
+    @Benchmark
+    public void splitAndSwitch(Blackhole blackhole) {
+        String topic = nextTopic();
+        String payload = new String(message.getPayload());
+        String[] parts = topic.split("/");
+        if (parts.length >= 3 && "devices".equals(parts[0])) {
+            String deviceId = parts[1];
+            switch (parts[2]) {
+                case "status", "control", "telemetry" -> blackhole.consume(deviceId);
+                default -> { }
+            }
+        }
+        blackhole.consume(payload);
+    }
+
+    @Benchmark
+    public void topicRouter(Blackhole blackhole) {
+        MqttTopicRouter.Match match = router.resolve(nextTopic());
+        if (match != null) {
+            blackhole.consume(match.deviceId());
+            blackhole.consume(match.route());
+        }
+        blackhole.consume(message.getPayload());
+    }
+}
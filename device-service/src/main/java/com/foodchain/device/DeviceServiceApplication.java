@@ -2,8 +2,10 @@ package com.foodchain.device;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication(scanBasePackages = {"com.foodchain.device", "com.foodchain.common"})
+@EnableScheduling
 public class DeviceServiceApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,103 @@
+package com.foodchain.device.config;
+
+import com.foodchain.device.service.DeviceEventBus;
+import com.foodchain.device.service.DeviceOwnerCache;
+import com.foodchain.device.service.StompSubscriptionRegistry;
+import com.foodchain.device.service.TcpDeviceEventBus;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+@Configuration
+public class EventBusConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(EventBusConfig.class);
+
+    private static final String FANOUT_PORT_METADATA = "fanout-port";
+
+    @Value("${spring.application.name}")
+    private String applicationName;
+
+    @Value("${app.websocket.fanout.mode}")
+    private String mode;
+
+    @Value("${app.websocket.fanout.port}")
+    private int port;
+
+    @Value("${app.websocket.fanout.peers}")
+    private List<String> staticPeers;
+
+    @Value("${app.websocket.fanout.flush-interval-ms}")
+    private long flushIntervalMs;
+
+    @Value("${app.websocket.fanout.max-batch}")
+    private int maxBatch;
+
+    @Value("${app.websocket.fanout.queue-capacity}")
+    private int queueCapacity;
+
+    @Value("${app.websocket.fanout.interest-interval-ms}")
+    private long interestIntervalMs;
+
+    @Value("${app.websocket.fanout.discovery-interval-ms}")
+    private long discoveryIntervalMs;
+
+    /**
+     * {@code local} (default) keeps events on the replica that ingested them; {@code tcp}
+     * forwards them to replicas holding matching subscriptions. Peers come from
+     * {@code app.websocket.fanout.peers} plus every Eureka instance of this service that
+     * advertises a {@code fanout-port}.
+     */
+    @Bean
+    public DeviceEventBus deviceEventBus(StompSubscriptionRegistry subscriptionRegistry,
+                                         DeviceOwnerCache ownerCache,
+                                         ObjectProvider<DiscoveryClient> discoveryClient,
+                                         MeterRegistry meterRegistry) throws IOException {
+        if (!"tcp".equalsIgnoreCase(mode)) {
+            return DeviceEventBus.LOCAL;
+        }
+        TcpDeviceEventBus bus = new TcpDeviceEventBus(subscriptionRegistry, ownerCache,
+                () -> peers(discoveryClient.getIfAvailable()),
+                new TcpDeviceEventBus.Settings(port, flushIntervalMs, maxBatch, queueCapacity,
+                        interestIntervalMs, discoveryIntervalMs),
+                meterRegistry);
+        bus.start();
+        return bus;
+    }
+
+    private List<InetSocketAddress> peers(DiscoveryClient discoveryClient) {
+        List<InetSocketAddress> peers = new ArrayList<>();
+        for (String peer : staticPeers) {
+            int separator = peer.lastIndexOf(':');
+            if (separator > 0) {
+                peers.add(new InetSocketAddress(peer.substring(0, separator).trim(),
+                        Integer.parseInt(peer.substring(separator + 1).trim())));
+            }
+        }
+        if (discoveryClient == null) {
+            return peers;
+        }
+        try {
+            for (ServiceInstance instance : discoveryClient.getInstances(applicationName)) {
+                String fanoutPort = instance.getMetadata().get(FANOUT_PORT_METADATA);
+                if (fanoutPort != null) {
+                    peers.add(new InetSocketAddress(instance.getHost(), Integer.parseInt(fanoutPort)));
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not look up fan-out peers in service discovery: {}", e.getMessage());
+        }
+        return peers;
+    }
+}
@@ -1,6 +1,8 @@
 package com.foodchain.device.config;
 
-import org.eclipse.paho.client.mqttv3.MqttClient;
+import com.foodchain.device.service.MappedSegmentPersistence;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
@@ -10,6 +12,8 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.nio.file.Path;
+
 @Configuration
 public class MqttConfig {
 
@@ -21,31 +25,66 @@ public class MqttConfig {
     @Value("${app.mqtt.client-id}")
     private String clientId;
 
+    @Value("${app.mqtt.instance-id}")
+    private String instanceId;
+
     @Value("${app.mqtt.keep-alive-interval}")
     private int keepAliveInterval;
 
     @Value("${app.mqtt.connection-timeout}")
     private int connectionTimeout;
 
+    @Value("${app.mqtt.publish.max-in-flight}")
+    private int maxInFlight;
+
+    @Value("${app.mqtt.persistence.type}")
+    private String persistenceType;
+
+    @Value("${app.mqtt.persistence.directory}")
+    private String persistenceDirectory;
+
+    @Value("${app.mqtt.persistence.segment-size-mb}")
+    private int segmentSizeMb;
+
+    @Value("${app.mqtt.persistence.sync}")
+    private boolean persistenceSync;
+
     @Bean
     public MqttConnectOptions mqttConnectOptions() {
         MqttConnectOptions options = new MqttConnectOptions();
         options.setAutomaticReconnect(true);
-        options.setCleanSession(true);
+        options.setCleanSession(!isDurable());
         options.setKeepAliveInterval(keepAliveInterval);
         options.setConnectionTimeout(connectionTimeout);
+        options.setMaxInflight(maxInFlight);
         return options;
     }
 
     @Bean
-    public MqttClient mqttClient(MqttConnectOptions options) throws MqttException {
-        MqttClient client = new MqttClient(brokerUrl, clientId + "-" + System.currentTimeMillis(), new MemoryPersistence());
+    public MqttAsyncClient mqttClient(MqttConnectOptions options) throws MqttException {
+        String suffix = instanceId.isBlank() ? String.valueOf(System.currentTimeMillis()) : instanceId;
+        MqttAsyncClient client = new MqttAsyncClient(brokerUrl, clientId + "-" + suffix, mqttPersistence());
         try {
-            client.connect(options);
+            client.connect(options).waitForCompletion(connectionTimeout * 1000L);
             log.info("Connected to MQTT broker at {}", brokerUrl);
         } catch (MqttException e) {
             log.warn("Could not connect to MQTT broker at {}. MQTT features will be unavailable: {}", brokerUrl, e.getMessage());
         }
         return client;
     }
+
+    private MqttClientPersistence mqttPersistence() {
+        if (!isDurable()) {
+            return new MemoryPersistence();
+        }
+        if (instanceId.isBlank()) {
+            log.warn("MQTT persistence is mapped but app.mqtt.instance-id is empty; the client id changes on "
+                    + "every restart, so persisted in-flight messages cannot be resumed");
+        }
+        return new MappedSegmentPersistence(Path.of(persistenceDirectory), segmentSizeMb * 1024 * 1024, persistenceSync);
+    }
+
+    private boolean isDurable() {
+        return "mapped".equalsIgnoreCase(persistenceType);
+    }
 }
@@ -1,15 +1,36 @@
 package com.foodchain.device.config;
 
+import com.foodchain.device.service.StompPayloadEncoder;
+import com.foodchain.device.service.StompSubscriptionRegistry;
+import com.foodchain.device.service.TelemetryBatcher;
+import com.foodchain.device.service.TelemetryConflator;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    private final TelemetryConflator telemetryConflator;
+    private final TelemetryBatcher telemetryBatcher;
+    private final StompSubscriptionRegistry subscriptionRegistry;
+    private final StompPayloadEncoder payloadEncoder;
+
+    public WebSocketConfig(TelemetryConflator telemetryConflator,
+                           TelemetryBatcher telemetryBatcher,
+                           StompSubscriptionRegistry subscriptionRegistry,
+                           StompPayloadEncoder payloadEncoder) {
+        this.telemetryConflator = telemetryConflator;
+        this.telemetryBatcher = telemetryBatcher;
+        this.subscriptionRegistry = subscriptionRegistry;
+        this.payloadEncoder = payloadEncoder;
+    }
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry registry) {
         registry.enableSimpleBroker("/topic");
@@ -22,4 +43,20 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                 .setAllowedOriginPatterns("*")
                 .withSockJS();
     }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.interceptors(subscriptionRegistry, telemetryBatcher, telemetryConflator, payloadEncoder);
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.interceptors(telemetryBatcher, telemetryConflator, payloadEncoder);
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.addDecoratorFactory(telemetryConflator::decorate);
+        registration.addDecoratorFactory(payloadEncoder::decorate);
+    }
 }
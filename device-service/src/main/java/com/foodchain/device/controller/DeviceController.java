@@ -1,28 +1,75 @@
 package com.foodchain.device.controller;
 
 import com.foodchain.common.dto.device.*;
+import com.foodchain.common.dto.mqtt.CommandResultDto;
+import com.foodchain.common.dto.mqtt.ControlCommandRequest;
+import com.foodchain.common.dto.mqtt.GroupCommandRequest;
+import com.foodchain.common.dto.mqtt.GroupCommandResultDto;
+import com.foodchain.device.service.DeviceChangeService;
+import com.foodchain.device.service.DeviceCommandService;
+import com.foodchain.device.service.DeviceProvisioningService;
 import com.foodchain.device.service.DeviceService;
+import com.foodchain.device.service.PendingCommandRegistry;
+import com.foodchain.device.service.TelemetryService;
 import jakarta.validation.Valid;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/devices")
 public class DeviceController {
 
     private final DeviceService deviceService;
+    private final TelemetryService telemetryService;
+    private final DeviceCommandService commandService;
+    private final DeviceChangeService changeService;
+    private final DeviceProvisioningService provisioningService;
 
-    public DeviceController(DeviceService deviceService) {
+    public DeviceController(DeviceService deviceService,
+                            TelemetryService telemetryService,
+                            DeviceCommandService commandService,
+                            DeviceChangeService changeService,
+                            DeviceProvisioningService provisioningService) {
         this.deviceService = deviceService;
+        this.telemetryService = telemetryService;
+        this.commandService = commandService;
+        this.changeService = changeService;
+        this.provisioningService = provisioningService;
     }
 
     @GetMapping
-    public ResponseEntity<List<DeviceDto>> getAllDevices(@RequestHeader("X-User-Id") String userId) {
-        return ResponseEntity.ok(deviceService.getAllDevices(UUID.fromString(userId)));
+    public ResponseEntity<List<DeviceDto>> getAllDevices(@RequestHeader("X-User-Id") String userId,
+                                                         WebRequest request) {
+        UUID user = UUID.fromString(userId);
+        long version = deviceService.getDevicesVersion(user);
+        String etag = deviceService.getDevicesEtag(user, version);
+        if (request.checkNotModified(etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        return ResponseEntity.ok().eTag(etag).body(deviceService.getAllDevices(user, version));
+    }
+
+    @GetMapping("/changes")
+    public ResponseEntity<DeviceChangesDto> getChanges(@RequestParam(required = false) String since,
+                                                       @RequestHeader("X-User-Id") String userId) {
+        return ResponseEntity.ok(changeService.getChanges(UUID.fromString(userId), since));
+    }
+
+    @GetMapping("/page")
+    public ResponseEntity<DevicePageDto> getDevicePage(@RequestParam(required = false) String type,
+                                                       @RequestParam(required = false) Boolean online,
+                                                       @RequestParam(name = "location_label", required = false) String locationLabel,
+                                                       @RequestParam(required = false) String cursor,
+                                                       @RequestParam(required = false) Integer limit,
+                                                       @RequestHeader("X-User-Id") String userId) {
+        return ResponseEntity.ok(deviceService.getDevicePage(UUID.fromString(userId), type, online, locationLabel,
+                cursor, limit));
     }
 
     @GetMapping("/{id}")
@@ -38,6 +85,12 @@ public class DeviceController {
                 .body(deviceService.createDevice(request, UUID.fromString(userId)));
     }
 
+    @PostMapping("/bulk")
+    public ResponseEntity<BulkCreateDevicesResultDto> createDevices(@Valid @RequestBody BulkCreateDevicesRequest request,
+                                                                    @RequestHeader("X-User-Id") String userId) {
+        return ResponseEntity.ok(provisioningService.createDevices(request, UUID.fromString(userId)));
+    }
+
     @PutMapping("/{id}")
     public ResponseEntity<DeviceDto> updateDevice(@PathVariable UUID id,
                                                   @RequestBody UpdateDeviceRequest request,
@@ -51,4 +104,51 @@ public class DeviceController {
                              @RequestHeader("X-User-Id") String userId) {
         deviceService.deleteDevice(id, UUID.fromString(userId));
     }
+
+    @GetMapping("/{id}/telemetry")
+    public ResponseEntity<List<TelemetrySeriesDto>> getTelemetry(@PathVariable UUID id,
+                                                                 @RequestParam(required = false) Long from,
+                                                                 @RequestParam(required = false) Long to,
+                                                                 @RequestParam(defaultValue = "60") long step,
+                                                                 @RequestHeader("X-User-Id") String userId) {
+        return ResponseEntity.ok(telemetryService.getTelemetry(id, UUID.fromString(userId), from, to, step));
+    }
+
+    @GetMapping("/{id}/telemetry/recent")
+    public ResponseEntity<TelemetryRecentDto> getRecentTelemetry(@PathVariable UUID id,
+                                                                 @RequestParam(defaultValue = "900") long window,
+                                                                 @RequestHeader("X-User-Id") String userId) {
+        return ResponseEntity.ok(telemetryService.getRecentTelemetry(id, UUID.fromString(userId), window));
+    }
+
+    @GetMapping("/{id}/telemetry/aggregates")
+    public ResponseEntity<List<TelemetryAggregateDto>> getTelemetryAggregates(@PathVariable UUID id,
+                                                                              @RequestHeader("X-User-Id") String userId) {
+        return ResponseEntity.ok(telemetryService.getAggregates(id, UUID.fromString(userId)));
+    }
+
+    @PostMapping("/{id}/controls/{controlId}/command")
+    public CompletableFuture<ResponseEntity<CommandResultDto>> sendCommand(@PathVariable UUID id,
+                                                                           @PathVariable UUID controlId,
+                                                                           @Valid @RequestBody ControlCommandRequest request,
+                                                                           @RequestParam(defaultValue = "true") boolean await,
+                                                                           @RequestHeader("X-User-Id") String userId) {
+        return commandService.sendCommand(id, controlId, request.value(), UUID.fromString(userId), await)
+                .thenApply(result -> ResponseEntity.status(commandStatus(result)).body(result));
+    }
+
+    @PostMapping("/commands")
+    public ResponseEntity<GroupCommandResultDto> sendGroupCommand(@Valid @RequestBody GroupCommandRequest request,
+                                                                  @RequestHeader("X-User-Id") String userId) {
+        return ResponseEntity.ok(commandService.sendGroupCommand(request, UUID.fromString(userId)));
+    }
+
+    private static HttpStatus commandStatus(CommandResultDto result) {
+        return switch (result.status()) {
+            case PendingCommandRegistry.PENDING -> HttpStatus.ACCEPTED;
+            case PendingCommandRegistry.TIMEOUT -> HttpStatus.GATEWAY_TIMEOUT;
+            case PendingCommandRegistry.FAILED -> HttpStatus.BAD_GATEWAY;
+            default -> HttpStatus.OK;
+        };
+    }
 }
@@ -0,0 +1,35 @@
+package com.foodchain.device.controller;
+
+import com.foodchain.common.dto.mqtt.IngestJournalStatusDto;
+import com.foodchain.common.dto.mqtt.IngestReplayResultDto;
+import com.foodchain.device.service.IngestReplayService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/internal/ingest")
+public class IngestAdminController {
+
+    private final IngestReplayService replayService;
+
+    public IngestAdminController(IngestReplayService replayService) {
+        this.replayService = replayService;
+    }
+
+    @GetMapping
+    public ResponseEntity<IngestJournalStatusDto> getStatus() {
+        return ResponseEntity.ok(replayService.getStatus());
+    }
+
+    @PostMapping("/replay")
+    public ResponseEntity<IngestReplayResultDto> replayRange(@RequestParam long from,
+                                                             @RequestParam long to,
+                                                             @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(replayService.replayRange(from, to, limit));
+    }
+
+    @PostMapping("/replay/failed")
+    public ResponseEntity<IngestReplayResultDto> replayFailed(@RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(replayService.replayFailed(limit));
+    }
+}
@@ -89,6 +89,7 @@ public class DeviceEntity {
 
     public Instant getCreatedAt() { return createdAt; }
     public Instant getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(Instant updatedAt) { this.updatedAt = updatedAt; }
 
     public List<DeviceControlEntity> getControls() { return controls; }
     public void setControls(List<DeviceControlEntity> controls) { this.controls = controls; }
@@ -28,7 +28,7 @@ public class StringListConverter implements AttributeConverter<List<String>, Str
 
     @Override
     public List<String> convertToEntityAttribute(String dbData) {
-        if (dbData == null || dbData.isBlank()) {
+        if (dbData == null || dbData.isBlank() || dbData.equals("[]")) {
             return Collections.emptyList();
         }
         try {
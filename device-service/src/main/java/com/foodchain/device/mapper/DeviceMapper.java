@@ -14,6 +14,10 @@ import java.util.List;
 public class DeviceMapper {
 
     public DeviceDto toDto(DeviceEntity entity) {
+        return toDto(entity, entity.isOnline());
+    }
+
+    public DeviceDto toDto(DeviceEntity entity, boolean online) {
         DeviceLocationDto location = new DeviceLocationDto(
                 entity.getLatitude(),
                 entity.getLongitude(),
@@ -29,7 +33,7 @@ public class DeviceMapper {
                 entity.getId().toString(),
                 entity.getName(),
                 entity.getType().name(),
-                entity.isOnline(),
+                online,
                 location,
                 controls,
                 entity.getMqttTopicPrefix(),
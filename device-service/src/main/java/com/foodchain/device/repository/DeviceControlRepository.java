@@ -3,7 +3,10 @@ package com.foodchain.device.repository;
 import com.foodchain.device.entity.DeviceControlEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import java.util.Optional;
 import java.util.UUID;
 
 public interface DeviceControlRepository extends JpaRepository<DeviceControlEntity, UUID> {
+
+    Optional<DeviceControlEntity> findByIdAndDevice_IdAndDevice_UserId(UUID id, UUID deviceId, UUID userId);
 }
@@ -0,0 +1,372 @@
+package com.foodchain.device.repository;
+
+import com.foodchain.common.dto.device.CreateDeviceRequest;
+import com.foodchain.common.dto.device.DeviceControlDto;
+import com.foodchain.common.dto.device.DeviceDto;
+import com.foodchain.common.dto.device.DeviceLocationDto;
+import com.foodchain.common.dto.device.DevicePresenceDto;
+import com.foodchain.device.entity.ControlType;
+import com.foodchain.device.entity.DeviceType;
+import com.foodchain.device.entity.StringListConverter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BiPredicate;
+
+@Repository
+public class DeviceJdbcRepository {
+
+    private static final String GROUP_TARGETS_SQL = """
+            SELECT d.id AS device_id, c.id AS control_id, c.control_type,
+                   c.min_value, c.max_value, c.step, c.options, c.mqtt_topic
+            FROM devices d
+            JOIN device_controls c ON c.device_id = d.id
+            WHERE d.user_id = ? AND c.name = ?""";
+
+    private static final String USER_DEVICES_SQL = """
+            SELECT id, name, type, is_online, latitude, longitude, address, location_label,
+                   mqtt_topic_prefix, created_at, updated_at
+            FROM devices
+            WHERE user_id = ?
+            ORDER BY created_at, id""";
+
+    private static final String DEVICE_PAGE_SQL = """
+            SELECT id, name, type, is_online, latitude, longitude, address, location_label,
+                   mqtt_topic_prefix, created_at, updated_at
+            FROM devices
+            WHERE user_id = ?""";
+
+    private static final String UPDATED_DEVICES_SQL = """
+            SELECT id, name, type, is_online, latitude, longitude, address, location_label,
+                   mqtt_topic_prefix, created_at, updated_at
+            FROM devices
+            WHERE user_id = ? AND updated_at > ?
+            ORDER BY updated_at, id""";
+
+    private static final String PRESENCE_CHANGES_SQL = """
+            SELECT id, is_online
+            FROM devices
+            WHERE user_id = ? AND online_changed_at > ? AND updated_at <= ?""";
+
+    private static final String DEVICE_CONTROLS_SQL = """
+            SELECT device_id, id, name, control_type, current_value,
+                   min_value, max_value, step, options, mqtt_topic
+            FROM device_controls
+            WHERE device_id = ANY(?)""";
+
+    private static final String USER_CONTROLS_SQL = """
+            SELECT c.device_id, c.id, c.name, c.control_type, c.current_value,
+                   c.min_value, c.max_value, c.step, c.options, c.mqtt_topic
+            FROM device_controls c
+            JOIN devices d ON d.id = c.device_id
+            WHERE d.user_id = ?""";
+
+    private static final String INSERT_DEVICE_SQL = """
+            INSERT INTO devices (id, user_id, name, type, is_online, latitude, longitude, address,
+                                 location_label, mqtt_topic_prefix, created_at, updated_at)
+            VALUES (?, ?, ?, ?, FALSE, ?, ?, ?, ?, ?, ?, ?)""";
+
+    private static final String INSERT_CONTROL_SQL = """
+            INSERT INTO device_controls (id, device_id, name, control_type, current_value,
+                                         min_value, max_value, step, options, mqtt_topic)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)""";
+
+    private static final StringListConverter OPTIONS_CONVERTER = new StringListConverter();
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public DeviceJdbcRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Returns the named control of every device owned by {@code userId} that matches the
+     * non-null filters, in one query. At most {@code limit} rows are read.
+     */
+    public List<GroupCommandTarget> findGroupCommandTargets(UUID userId, String controlName, DeviceType type,
+                                                            String locationLabel, Double minLatitude, Double maxLatitude,
+                                                            Double minLongitude, Double maxLongitude, int limit) {
+        StringBuilder sql = new StringBuilder(GROUP_TARGETS_SQL);
+        List<Object> args = new ArrayList<>();
+        args.add(userId);
+        args.add(controlName);
+        if (type != null) {
+            sql.append(" AND d.type = ?");
+            args.add(type.name());
+        }
+        if (locationLabel != null) {
+            sql.append(" AND d.location_label = ?");
+            args.add(locationLabel);
+        }
+        if (minLatitude != null) {
+            sql.append(" AND d.latitude BETWEEN ? AND ? AND d.longitude BETWEEN ? AND ?");
+            args.add(minLatitude);
+            args.add(maxLatitude);
+            args.add(minLongitude);
+            args.add(maxLongitude);
+        }
+        sql.append(" LIMIT ?");
+        args.add(limit);
+
+        return jdbcTemplate.query(sql.toString(), (rs, rowNum) -> new GroupCommandTarget(
+                rs.getObject("device_id", UUID.class),
+                rs.getObject("control_id", UUID.class),
+                ControlType.valueOf(rs.getString("control_type")),
+                getFloat(rs, "min_value"),
+                getFloat(rs, "max_value"),
+                getFloat(rs, "step"),
+                OPTIONS_CONVERTER.convertToEntityAttribute(rs.getString("options")),
+                rs.getString("mqtt_topic")
+        ), args.toArray());
+    }
+
+    /**
+     * Reads every device of {@code userId} together with its controls in two queries,
+     * mapping rows straight into DTOs without loading entities. {@code online} receives
+     * each device id and its stored {@code is_online} flag and decides what is reported.
+     */
+    public List<DeviceDto> findDevicesByUserId(UUID userId, BiPredicate<UUID, Boolean> online) {
+        Map<UUID, List<DeviceControlDto>> controls = new HashMap<>();
+        jdbcTemplate.query(USER_CONTROLS_SQL, rs -> {
+            controls.computeIfAbsent(rs.getObject("device_id", UUID.class), id -> new ArrayList<>())
+                    .add(mapControl(rs));
+        }, userId);
+
+        return jdbcTemplate.query(USER_DEVICES_SQL, (rs, rowNum) -> mapDevice(rs,
+                controls.getOrDefault(rs.getObject("id", UUID.class), Collections.emptyList()), online), userId);
+    }
+
+    /**
+     * Returns up to {@code limit} devices of {@code userId} ordered by
+     * {@code (created_at, id)} and strictly after {@code after}, plus the key to continue
+     * from if more rows follow. Filters are ignored when {@code null}. The seek predicate
+     * lets Postgres start from the index position instead of skipping an offset, so every
+     * page costs the same however deep the client is.
+     */
+    public DevicePage findDevicePage(UUID userId, DeviceType type, Boolean online, String locationLabel,
+                                     PageKey after, int limit, BiPredicate<UUID, Boolean> onlineState) {
+        StringBuilder sql = new StringBuilder(DEVICE_PAGE_SQL);
+        List<Object> args = new ArrayList<>();
+        args.add(userId);
+        if (type != null) {
+            sql.append(" AND type = ?");
+            args.add(type.name());
+        }
+        if (online != null) {
+            sql.append(" AND is_online = ?");
+            args.add(online);
+        }
+        if (locationLabel != null) {
+            sql.append(" AND location_label = ?");
+            args.add(locationLabel);
+        }
+        if (after != null) {
+            sql.append(" AND (created_at, id) > (?, ?)");
+            args.add(after.createdAt());
+            args.add(after.id());
+        }
+        sql.append(" ORDER BY created_at, id LIMIT ?");
+        // one extra row tells whether another page follows
+        args.add(limit + 1);
+
+        List<PageKey> keys = new ArrayList<>();
+        Map<UUID, List<DeviceControlDto>> controls = new HashMap<>();
+        List<DeviceDto> devices = jdbcTemplate.query(sql.toString(), (rs, rowNum) -> {
+            PageKey key = new PageKey(rs.getObject("created_at", OffsetDateTime.class), rs.getObject("id", UUID.class));
+            keys.add(key);
+            List<DeviceControlDto> deviceControls = new ArrayList<>();
+            controls.put(key.id(), deviceControls);
+            return mapDevice(rs, deviceControls, onlineState);
+        }, args.toArray());
+
+        PageKey next = null;
+        if (devices.size() > limit) {
+            controls.remove(keys.get(limit).id());
+            devices = devices.subList(0, limit);
+            next = keys.get(limit - 1);
+        }
+        loadControls(controls);
+        return new DevicePage(devices, next);
+    }
+
+    /**
+     * Returns the devices of {@code userId} whose row changed after {@code since}, with
+     * their controls.
+     */
+    public List<DeviceDto> findDevicesUpdatedSince(UUID userId, OffsetDateTime since,
+                                                   BiPredicate<UUID, Boolean> online) {
+        Map<UUID, List<DeviceControlDto>> controls = new HashMap<>();
+        List<DeviceDto> devices = jdbcTemplate.query(UPDATED_DEVICES_SQL, (rs, rowNum) -> {
+            List<DeviceControlDto> deviceControls = new ArrayList<>();
+            controls.put(rs.getObject("id", UUID.class), deviceControls);
+            return mapDevice(rs, deviceControls, online);
+        }, userId, since);
+        loadControls(controls);
+        return devices;
+    }
+
+    /**
+     * Returns the online flag of every device of {@code userId} whose flag was written
+     * after {@code since} but whose row was not otherwise changed, so it is not already in
+     * {@link #findDevicesUpdatedSince}.
+     */
+    public List<DevicePresenceDto> findPresenceChangedSince(UUID userId, OffsetDateTime since,
+                                                            BiPredicate<UUID, Boolean> online) {
+        return jdbcTemplate.query(PRESENCE_CHANGES_SQL, (rs, rowNum) -> {
+            UUID id = rs.getObject("id", UUID.class);
+            return new DevicePresenceDto(id.toString(), online.test(id, rs.getBoolean("is_online")));
+        }, userId, since, since);
+    }
+
+    /**
+     * Inserts already validated devices and their controls as JDBC batches of
+     * {@code batchSize} rows. The driver's {@code reWriteBatchedInserts} turns each batch
+     * into multi-row INSERT statements.
+     */
+    public void insertDevices(UUID userId, List<NewDevice> devices, int batchSize) {
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        jdbcTemplate.batchUpdate(INSERT_DEVICE_SQL, devices, batchSize, (ps, device) -> {
+            CreateDeviceRequest request = device.request();
+            ps.setObject(1, device.id());
+            ps.setObject(2, userId);
+            ps.setString(3, request.name());
+            ps.setString(4, request.type());
+            ps.setObject(5, request.location().latitude(), Types.DOUBLE);
+            ps.setObject(6, request.location().longitude(), Types.DOUBLE);
+            ps.setString(7, request.location().address());
+            ps.setString(8, request.location().label());
+            ps.setString(9, request.mqttTopicPrefix());
+            ps.setObject(10, now);
+            ps.setObject(11, now);
+        });
+
+        List<NewControl> controls = new ArrayList<>();
+        for (NewDevice device : devices) {
+            if (device.request().controls() != null) {
+                for (DeviceControlDto control : device.request().controls()) {
+                    controls.add(new NewControl(device.id(), control));
+                }
+            }
+        }
+        jdbcTemplate.batchUpdate(INSERT_CONTROL_SQL, controls, batchSize, (ps, entry) -> {
+            DeviceControlDto control = entry.control();
+            ps.setObject(1, UUID.randomUUID());
+            ps.setObject(2, entry.deviceId());
+            ps.setString(3, control.name());
+            ps.setString(4, control.controlType());
+            ps.setString(5, control.currentValue());
+            ps.setObject(6, control.minValue(), Types.DOUBLE);
+            ps.setObject(7, control.maxValue(), Types.DOUBLE);
+            ps.setObject(8, control.step(), Types.DOUBLE);
+            ps.setString(9, OPTIONS_CONVERTER.convertToDatabaseColumn(control.options()));
+            ps.setString(10, control.mqttTopic());
+        });
+    }
+
+    public UUID findOwner(UUID deviceId) {
+        List<UUID> owners = jdbcTemplate.query("SELECT user_id FROM devices WHERE id = ?",
+                (rs, rowNum) -> rs.getObject("user_id", UUID.class), deviceId);
+        return owners.isEmpty() ? null : owners.get(0);
+    }
+
+    public Map<UUID, UUID> findOwners(Collection<UUID> deviceIds) {
+        Map<UUID, UUID> owners = new HashMap<>();
+        if (deviceIds.isEmpty()) {
+            return owners;
+        }
+        UUID[] ids = deviceIds.toArray(UUID[]::new);
+        jdbcTemplate.query("SELECT id, user_id FROM devices WHERE id = ANY(?)",
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("uuid", ids)),
+                rs -> {
+                    owners.put(rs.getObject("id", UUID.class), rs.getObject("user_id", UUID.class));
+                });
+        return owners;
+    }
+
+    private void loadControls(Map<UUID, List<DeviceControlDto>> controls) {
+        if (controls.isEmpty()) {
+            return;
+        }
+        UUID[] ids = controls.keySet().toArray(UUID[]::new);
+        jdbcTemplate.query(DEVICE_CONTROLS_SQL,
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("uuid", ids)),
+                rs -> {
+                    controls.get(rs.getObject("device_id", UUID.class)).add(mapControl(rs));
+                });
+    }
+
+    private static DeviceDto mapDevice(ResultSet rs, List<DeviceControlDto> controls,
+                                       BiPredicate<UUID, Boolean> online) throws SQLException {
+        UUID id = rs.getObject("id", UUID.class);
+        return new DeviceDto(
+                id.toString(),
+                rs.getString("name"),
+                rs.getString("type"),
+                online.test(id, rs.getBoolean("is_online")),
+                new DeviceLocationDto(
+                        getDouble(rs, "latitude"),
+                        getDouble(rs, "longitude"),
+                        rs.getString("address"),
+                        rs.getString("location_label")),
+                controls,
+                rs.getString("mqtt_topic_prefix"),
+                rs.getTimestamp("created_at").getTime(),
+                rs.getTimestamp("updated_at").getTime()
+        );
+    }
+
+    private static DeviceControlDto mapControl(ResultSet rs) throws SQLException {
+        return new DeviceControlDto(
+                rs.getString("id"),
+                rs.getString("name"),
+                rs.getString("control_type"),
+                rs.getString("current_value"),
+                getFloat(rs, "min_value"),
+                getFloat(rs, "max_value"),
+                getFloat(rs, "step"),
+                OPTIONS_CONVERTER.convertToEntityAttribute(rs.getString("options")),
+                rs.getString("mqtt_topic")
+        );
+    }
+
+    private static Double getDouble(ResultSet rs, String column) throws SQLException {
+        double value = rs.getDouble(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static Float getFloat(ResultSet rs, String column) throws SQLException {
+        float value = rs.getFloat(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    public record NewDevice(UUID id, CreateDeviceRequest request) {}
+
+    private record NewControl(UUID deviceId, DeviceControlDto control) {}
+
+    public record PageKey(OffsetDateTime createdAt, UUID id) {}
+
+    public record DevicePage(List<DeviceDto> devices, PageKey next) {}
+
+    public record GroupCommandTarget(
+            UUID deviceId,
+            UUID controlId,
+            ControlType controlType,
+            Float minValue,
+            Float maxValue,
+            Float step,
+            List<String> options,
+            String mqttTopic
+    ) {}
+}
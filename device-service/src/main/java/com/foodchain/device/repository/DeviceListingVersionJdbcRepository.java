@@ -0,0 +1,62 @@
+package com.foodchain.device.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Keeps a counter per user that moves whenever a device of the user, or one of its
+ * controls, is created, updated or deleted. It is bumped in the transaction that makes
+ * the change, so every replica can tell whether a listing it cached is still current.
+ * Online flips do not move it: presence is patched into cached listings in place.
+ * <p>
+ * {@code changed_at} is taken from the database clock when the row is bumped, so replicas
+ * can poll for recent changes without trusting their own clocks.
+ */
+@Repository
+public class DeviceListingVersionJdbcRepository {
+
+    private static final String BUMP_SQL = """
+            INSERT INTO device_listing_versions (user_id, version, changed_at) VALUES (?, 1, clock_timestamp())
+            ON CONFLICT (user_id) DO UPDATE
+            SET version = device_listing_versions.version + 1, changed_at = clock_timestamp()""";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public DeviceListingVersionJdbcRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Returns the user's listing version, {@code 0} if the listing never changed.
+     */
+    public long find(UUID userId) {
+        List<Long> versions = jdbcTemplate.query("SELECT version FROM device_listing_versions WHERE user_id = ?",
+                (rs, rowNum) -> rs.getLong("version"), userId);
+        return versions.isEmpty() ? 0 : versions.get(0);
+    }
+
+    public void bump(UUID userId) {
+        jdbcTemplate.update(BUMP_SQL, userId);
+    }
+
+    /**
+     * Returns every version bumped after {@code since}, by the database clock.
+     */
+    public List<VersionChange> findChangedSince(OffsetDateTime since) {
+        return jdbcTemplate.query(
+                "SELECT user_id, version, changed_at FROM device_listing_versions WHERE changed_at > ?",
+                (rs, rowNum) -> new VersionChange(rs.getObject("user_id", UUID.class), rs.getLong("version"),
+                        rs.getObject("changed_at", OffsetDateTime.class)),
+                since);
+    }
+
+    public OffsetDateTime now() {
+        return jdbcTemplate.queryForObject("SELECT clock_timestamp()", OffsetDateTime.class);
+    }
+
+    public record VersionChange(UUID userId, long version, OffsetDateTime changedAt) {}
+}
@@ -13,5 +13,7 @@ public interface DeviceRepository extends JpaRepository<DeviceEntity, UUID> {
 
     Optional<DeviceEntity> findByIdAndUserId(UUID id, UUID userId);
 
+    boolean existsByIdAndUserId(UUID id, UUID userId);
+
     void deleteByIdAndUserId(UUID id, UUID userId);
 }
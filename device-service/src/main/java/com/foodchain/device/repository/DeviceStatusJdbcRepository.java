@@ -0,0 +1,34 @@
+package com.foodchain.device.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.util.Collection;
+import java.util.UUID;
+
+@Repository
+public class DeviceStatusJdbcRepository {
+
+    private static final String UPDATE_ONLINE_SQL =
+            "UPDATE devices SET is_online = ?, online_changed_at = NOW() WHERE id = ANY(?) AND is_online <> ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public DeviceStatusJdbcRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public int updateOnlineStatus(Collection<UUID> deviceIds, boolean online) {
+        if (deviceIds.isEmpty()) {
+            return 0;
+        }
+        return jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement(UPDATE_ONLINE_SQL);
+            ps.setBoolean(1, online);
+            ps.setArray(2, con.createArrayOf("uuid", deviceIds.toArray()));
+            ps.setBoolean(3, online);
+            return ps;
+        });
+    }
+}
@@ -0,0 +1,38 @@
+package com.foodchain.device.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Remembers deleted devices so that {@code GET /devices/changes} can report deletions to
+ * clients that synced before them.
+ */
+@Repository
+public class DeviceTombstoneJdbcRepository {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO device_tombstones (device_id, user_id) VALUES (?, ?) ON CONFLICT (device_id) DO NOTHING";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public DeviceTombstoneJdbcRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void insert(UUID deviceId, UUID userId) {
+        jdbcTemplate.update(INSERT_SQL, deviceId, userId);
+    }
+
+    public List<UUID> findDeletedSince(UUID userId, OffsetDateTime since) {
+        return jdbcTemplate.query("SELECT device_id FROM device_tombstones WHERE user_id = ? AND deleted_at > ?",
+                (rs, rowNum) -> rs.getObject("device_id", UUID.class), userId, since);
+    }
+
+    public int deleteBefore(OffsetDateTime cutoff) {
+        return jdbcTemplate.update("DELETE FROM device_tombstones WHERE deleted_at < ?", cutoff);
+    }
+}
@@ -0,0 +1,104 @@
+package com.foodchain.device.repository;
+
+import com.foodchain.common.dto.device.TelemetryPointDto;
+import com.foodchain.common.dto.device.TelemetrySeriesDto;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public class TelemetryJdbcRepository {
+
+    public static final String PARTITION_PREFIX = "device_telemetry_p";
+    public static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.BASIC_ISO_DATE;
+
+    private static final String INSERT_SQL =
+            "INSERT INTO device_telemetry (device_id, ts, metric, value) VALUES (?, ?, ?, ?)";
+
+    private static final String LIST_PARTITIONS_SQL = """
+            SELECT c.relname FROM pg_inherits i
+            JOIN pg_class c ON c.oid = i.inhrelid
+            JOIN pg_class p ON p.oid = i.inhparent
+            WHERE p.relname = 'device_telemetry'""";
+
+    private static final String DOWNSAMPLE_SQL = """
+            SELECT metric,
+                   (floor(extract(epoch FROM ts) / ?) * ?)::bigint AS bucket,
+                   min(value) AS min_value,
+                   max(value) AS max_value,
+                   avg(value) AS avg_value,
+                   count(*) AS sample_count
+            FROM device_telemetry
+            WHERE device_id = ? AND ts >= ? AND ts < ?
+            GROUP BY metric, bucket
+            ORDER BY metric, bucket""";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public TelemetryJdbcRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void createPartition(LocalDate day) {
+        String from = day.atStartOfDay(ZoneOffset.UTC).toInstant().toString();
+        String to = day.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant().toString();
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + partitionName(day)
+                + " PARTITION OF device_telemetry FOR VALUES FROM ('" + from + "') TO ('" + to + "')");
+    }
+
+    public List<String> findPartitionNames() {
+        return jdbcTemplate.queryForList(LIST_PARTITIONS_SQL, String.class);
+    }
+
+    public void dropPartition(LocalDate day) {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS " + partitionName(day));
+    }
+
+    public void insert(int size, UUID[] deviceIds, long[] timestamps, String[] metrics, double[] values) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                ps.setObject(1, deviceIds[i]);
+                ps.setTimestamp(2, new Timestamp(timestamps[i]));
+                ps.setString(3, metrics[i]);
+                ps.setDouble(4, values[i]);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return size;
+            }
+        });
+    }
+
+    public List<TelemetrySeriesDto> findDownsampled(UUID deviceId, long fromMs, long toMs, long stepSeconds) {
+        List<TelemetrySeriesDto> series = new ArrayList<>();
+        jdbcTemplate.query(DOWNSAMPLE_SQL, rs -> {
+            String metric = rs.getString("metric");
+            if (series.isEmpty() || !series.get(series.size() - 1).metric().equals(metric)) {
+                series.add(new TelemetrySeriesDto(metric, new ArrayList<>()));
+            }
+            series.get(series.size() - 1).points().add(new TelemetryPointDto(
+                    rs.getLong("bucket") * 1000,
+                    rs.getDouble("min_value"),
+                    rs.getDouble("max_value"),
+                    rs.getDouble("avg_value"),
+                    rs.getLong("sample_count")));
+        }, stepSeconds, stepSeconds, deviceId, new Timestamp(fromMs), new Timestamp(toMs));
+        return series;
+    }
+
+    private static String partitionName(LocalDate day) {
+        return PARTITION_PREFIX + PARTITION_SUFFIX.format(day);
+    }
+}
@@ -0,0 +1,73 @@
+package com.foodchain.device.service;
+
+import com.foodchain.common.exception.BadRequestException;
+import com.foodchain.device.entity.ControlType;
+import com.foodchain.device.entity.DeviceControlEntity;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.regex.Pattern;
+
+@Component
+public class ControlValueValidator {
+
+    private static final Pattern COLOR_PATTERN = Pattern.compile("^#[0-9A-Fa-f]{6}$");
+
+    public void validate(DeviceControlEntity control, String value) {
+        validate(control.getControlType(), control.getMinValue(), control.getMaxValue(),
+                control.getStep(), control.getOptions(), value);
+    }
+
+    public void validate(ControlType type, Float min, Float max, Float step, List<String> options, String value) {
+        switch (type) {
+            case TOGGLE -> {
+                if (!"true".equalsIgnoreCase(value) && !"false".equalsIgnoreCase(value)) {
+                    throw new BadRequestException("TOGGLE value must be 'true' or 'false'");
+                }
+            }
+            case SLIDER -> validateSlider(min, max, step, value);
+            case DROPDOWN -> {
+                if (options == null || !options.contains(value)) {
+                    throw new BadRequestException("DROPDOWN value must be one of " + options);
+                }
+            }
+            case COLOR_PICKER -> {
+                if (!COLOR_PATTERN.matcher(value).matches()) {
+                    throw new BadRequestException("COLOR_PICKER value must be a #RRGGBB color");
+                }
+            }
+            case BUTTON -> {
+            }
+        }
+    }
+
+    private void validateSlider(Float min, Float max, Float step, String value) {
+        double number;
+        try {
+            number = Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("SLIDER value must be a number");
+        }
+        if (!Double.isFinite(number)) {
+            throw new BadRequestException("SLIDER value must be a number");
+        }
+        if (min != null && number < min) {
+            throw new BadRequestException("SLIDER value must be at least " + min);
+        }
+        if (max != null && number > max) {
+            throw new BadRequestException("SLIDER value must be at most " + max);
+        }
+        if (step != null && step > 0) {
+            // Float.toString gives the shortest decimal that round-trips, so 0.1f is 0.1
+            // here rather than 0.100000001490116...; exact decimal arithmetic then accepts
+            // every value the control advertises. BigDecimal.valueOf does the same for the
+            // parsed double.
+            BigDecimal base = min != null ? new BigDecimal(min.toString()) : BigDecimal.ZERO;
+            BigDecimal offset = BigDecimal.valueOf(number).subtract(base);
+            if (offset.remainder(new BigDecimal(step.toString())).signum() != 0) {
+                throw new BadRequestException("SLIDER value must be a multiple of " + step + " from " + base);
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.foodchain.device.service;
+
+import com.foodchain.common.dto.device.DeviceChangesDto;
+import com.foodchain.common.dto.device.DeviceDto;
+import com.foodchain.common.dto.device.DevicePresenceDto;
+import com.foodchain.common.exception.BadRequestException;
+import com.foodchain.device.repository.DeviceJdbcRepository;
+import com.foodchain.device.repository.DeviceTombstoneJdbcRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Serves delta syncs of a user's device list. A cursor is a point in time: devices whose
+ * {@code updated_at} is later are returned in full and deleted devices are read from
+ * {@code device_tombstones}. Presence writes stamp {@code online_changed_at} instead, so a
+ * device that only went on or offline is reported as an id and online flag in
+ * {@code presence} rather than in full. Timestamps are taken when a transaction writes, not when it
+ * commits, so each new cursor lags {@code grace-ms} behind the clock and consecutive syncs
+ * overlap slightly; clients apply the result as upserts. A missing cursor, or one older
+ * than the tombstone retention, gets the full list with {@code reset} set.
+ */
+@Service
+public class DeviceChangeService {
+
+    private static final Logger log = LoggerFactory.getLogger(DeviceChangeService.class);
+
+    private final DeviceJdbcRepository deviceJdbcRepository;
+    private final DeviceTombstoneJdbcRepository tombstoneRepository;
+    private final DevicePresenceTracker presenceTracker;
+
+    @Value("${app.device.changes.retention-days}")
+    private int retentionDays;
+
+    @Value("${app.device.changes.grace-ms}")
+    private long graceMs;
+
+    public DeviceChangeService(DeviceJdbcRepository deviceJdbcRepository,
+                               DeviceTombstoneJdbcRepository tombstoneRepository,
+                               DevicePresenceTracker presenceTracker) {
+        this.deviceJdbcRepository = deviceJdbcRepository;
+        this.tombstoneRepository = tombstoneRepository;
+        this.presenceTracker = presenceTracker;
+    }
+
+    public DeviceChangesDto getChanges(UUID userId, String cursor) {
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        String next = encodeCursor(now.minus(graceMs, ChronoUnit.MILLIS));
+        OffsetDateTime since = decodeCursor(cursor);
+
+        if (since == null || since.isBefore(now.minusDays(retentionDays))) {
+            List<DeviceDto> devices = deviceJdbcRepository.findDevicesByUserId(userId, presenceTracker::isOnline);
+            return new DeviceChangesDto(devices, List.of(), List.of(), next, true);
+        }
+        List<DeviceDto> devices = deviceJdbcRepository.findDevicesUpdatedSince(userId, since, presenceTracker::isOnline);
+        List<String> deletedIds = tombstoneRepository.findDeletedSince(userId, since).stream()
+                .map(UUID::toString)
+                .toList();
+        List<DevicePresenceDto> presence =
+                deviceJdbcRepository.findPresenceChangedSince(userId, since, presenceTracker::isOnline);
+        return new DeviceChangesDto(devices, deletedIds, presence, next, false);
+    }
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${app.device.changes.maintenance-interval-ms}")
+    public void purgeTombstones() {
+        try {
+            int purged = tombstoneRepository.deleteBefore(OffsetDateTime.now(ZoneOffset.UTC).minusDays(retentionDays));
+            if (purged > 0) {
+                log.info("Purged {} device tombstones", purged);
+            }
+        } catch (DataAccessException e) {
+            log.error("Device tombstone maintenance failed: {}", e.getMessage());
+        }
+    }
+
+    private static String encodeCursor(OffsetDateTime time) {
+        long micros = ChronoUnit.MICROS.between(Instant.EPOCH, time.toInstant());
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(Long.toString(micros).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static OffsetDateTime decodeCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            long micros = Long.parseLong(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII));
+            return Instant.EPOCH.plus(micros, ChronoUnit.MICROS).atOffset(ZoneOffset.UTC);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Invalid cursor");
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.foodchain.device.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.foodchain.common.dto.mqtt.CommandResultDto;
+import com.foodchain.common.dto.mqtt.ControlCommandDto;
+import com.foodchain.common.dto.mqtt.GroupCommandRequest;
+import com.foodchain.common.dto.mqtt.GroupCommandResultDto;
+import com.foodchain.common.exception.BadRequestException;
+import com.foodchain.common.exception.ResourceNotFoundException;
+import com.foodchain.device.entity.DeviceControlEntity;
+import com.foodchain.device.entity.DeviceType;
+import com.foodchain.device.repository.DeviceControlRepository;
+import com.foodchain.device.repository.DeviceJdbcRepository;
+import com.foodchain.device.repository.DeviceJdbcRepository.GroupCommandTarget;
+import jakarta.annotation.PostConstruct;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+@Service
+public class DeviceCommandService {
+
+    private static final Logger log = LoggerFactory.getLogger(DeviceCommandService.class);
+
+    private static final JsonFieldExtractor.FieldSet ACK_FIELDS =
+            JsonFieldExtractor.fields("correlation_id", "status", "message");
+
+    private final DeviceControlRepository controlRepository;
+    private final DeviceJdbcRepository deviceJdbcRepository;
+    private final ControlValueValidator valueValidator;
+    private final PendingCommandRegistry pendingCommands;
+    private final MqttPublisher mqttPublisher;
+    private final MqttTopicRouter topicRouter;
+    private final JsonFieldExtractor jsonFieldExtractor;
+    private final WebSocketNotificationService webSocketService;
+    private final ObjectMapper objectMapper;
+    private final Semaphore groupOutstanding;
+
+    @Value("${app.commands.ack-timeout-ms}")
+    private long ackTimeoutMs;
+
+    @Value("${app.commands.group.max-targets}")
+    private int groupMaxTargets;
+
+    @Value("${app.commands.group.rate-per-second}")
+    private long groupRatePerSecond;
+
+    public DeviceCommandService(DeviceControlRepository controlRepository,
+                                DeviceJdbcRepository deviceJdbcRepository,
+                                ControlValueValidator valueValidator,
+                                PendingCommandRegistry pendingCommands,
+                                MqttPublisher mqttPublisher,
+                                MqttTopicRouter topicRouter,
+                                JsonFieldExtractor jsonFieldExtractor,
+                                WebSocketNotificationService webSocketService,
+                                ObjectMapper objectMapper,
+                                @Value("${app.commands.group.max-outstanding}") int groupMaxOutstanding) {
+        this.controlRepository = controlRepository;
+        this.deviceJdbcRepository = deviceJdbcRepository;
+        this.valueValidator = valueValidator;
+        this.pendingCommands = pendingCommands;
+        this.mqttPublisher = mqttPublisher;
+        this.topicRouter = topicRouter;
+        this.jsonFieldExtractor = jsonFieldExtractor;
+        this.webSocketService = webSocketService;
+        this.objectMapper = objectMapper;
+        this.groupOutstanding = new Semaphore(groupMaxOutstanding);
+    }
+
+    @PostConstruct
+    public void init() {
+        topicRouter.register("ack", this::handleAck);
+    }
+
+    /**
+     * Validates and publishes a command. With {@code await} the returned future completes
+     * with the device's acknowledgement or a timeout; otherwise it completes immediately
+     * with a {@code PENDING} result and the outcome is pushed on
+     * {@code /topic/devices/{id}/commands}.
+     */
+    public CompletableFuture<CommandResultDto> sendCommand(UUID deviceId, UUID controlId, String value, UUID userId,
+                                                           boolean await) {
+        DeviceControlEntity control = controlRepository.findByIdAndDevice_IdAndDevice_UserId(controlId, deviceId, userId)
+                .orElseThrow(() -> new ResourceNotFoundException("Control not found"));
+        valueValidator.validate(control, value);
+
+        String correlationId = UUID.randomUUID().toString();
+        ControlCommandDto command = new ControlCommandDto(deviceId.toString(), controlId.toString(), value);
+        String topic = commandTopic(deviceId, control.getMqttTopic());
+
+        CompletableFuture<CommandResultDto> result = pendingCommands.register(correlationId, command, ackTimeoutMs);
+        result.thenAccept(completed -> webSocketService.sendCommandResult(command.deviceId(), completed));
+
+        mqttPublisher.publish(topic, commandPayload(correlationId, command))
+                .whenComplete((ignored, error) -> {
+                    if (error != null) {
+                        log.warn("Failed to publish command {} to {}: {}", correlationId, topic, error.getMessage());
+                        pendingCommands.fail(correlationId, "Publish failed: " + error.getMessage());
+                    }
+                });
+        return await
+                ? result
+                : CompletableFuture.completedFuture(
+                        PendingCommandRegistry.result(correlationId, command, PendingCommandRegistry.PENDING, null, null));
+    }
+
+    /**
+     * Sends one command to the named control of every matching device. Targets are read
+     * with a single query, then published at no more than {@code rate-per-second} with
+     * at most {@code max-outstanding} publishes unacknowledged by the broker across all
+     * group commands. Device acks are not awaited.
+     */
+    public GroupCommandResultDto sendGroupCommand(GroupCommandRequest request, UUID userId) {
+        long started = System.nanoTime();
+        DeviceType type = parseDeviceType(request.type());
+        validateBoundingBox(request);
+
+        List<GroupCommandTarget> targets = deviceJdbcRepository.findGroupCommandTargets(userId, request.controlName(),
+                type, request.locationLabel(), request.minLatitude(), request.maxLatitude(),
+                request.minLongitude(), request.maxLongitude(), groupMaxTargets + 1);
+        if (targets.size() > groupMaxTargets) {
+            throw new BadRequestException("Group command matches more than " + groupMaxTargets + " devices");
+        }
+
+        String correlationId = UUID.randomUUID().toString();
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, groupRatePerSecond);
+        List<CompletableFuture<Void>> publishes = new ArrayList<>(targets.size());
+        AtomicInteger failed = new AtomicInteger();
+        int rejected = 0;
+
+        for (GroupCommandTarget target : targets) {
+            try {
+                valueValidator.validate(target.controlType(), target.minValue(), target.maxValue(),
+                        target.step(), target.options(), request.value());
+            } catch (BadRequestException e) {
+                rejected++;
+                continue;
+            }
+
+            long wait = started + publishes.size() * intervalNanos - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            try {
+                groupOutstanding.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            ControlCommandDto command = new ControlCommandDto(
+                    target.deviceId().toString(), target.controlId().toString(), request.value());
+            publishes.add(mqttPublisher.publish(commandTopic(target.deviceId(), target.mqttTopic()),
+                            commandPayload(correlationId, command))
+                    .whenComplete((ignored, error) -> {
+                        groupOutstanding.release();
+                        if (error != null) {
+                            failed.incrementAndGet();
+                        }
+                    }));
+        }
+
+        CompletableFuture.allOf(publishes.toArray(new CompletableFuture[0]))
+                .exceptionally(error -> null)
+                .join();
+        int notSent = targets.size() - rejected - publishes.size();
+        log.info("Group command {} for control '{}': {} matched, {} failed, {} rejected",
+                correlationId, request.controlName(), targets.size(), failed.get() + notSent, rejected);
+        return new GroupCommandResultDto(
+                correlationId,
+                targets.size(),
+                publishes.size() - failed.get(),
+                failed.get() + notSent,
+                rejected,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started)
+        );
+    }
+
+    private static DeviceType parseDeviceType(String type) {
+        if (type == null || type.isBlank()) {
+            return null;
+        }
+        try {
+            return DeviceType.valueOf(type.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Unknown device type: " + type);
+        }
+    }
+
+    private static void validateBoundingBox(GroupCommandRequest request) {
+        int bounds = (request.minLatitude() != null ? 1 : 0) + (request.maxLatitude() != null ? 1 : 0)
+                + (request.minLongitude() != null ? 1 : 0) + (request.maxLongitude() != null ? 1 : 0);
+        if (bounds == 0) {
+            return;
+        }
+        if (bounds != 4) {
+            throw new BadRequestException("Bounding box requires minLatitude, maxLatitude, minLongitude and maxLongitude");
+        }
+        if (request.minLatitude() > request.maxLatitude() || request.minLongitude() > request.maxLongitude()) {
+            throw new BadRequestException("Bounding box minimums must not exceed maximums");
+        }
+    }
+
+    private static String commandTopic(UUID deviceId, String controlTopic) {
+        return controlTopic != null && !controlTopic.isBlank() ? controlTopic : "devices/" + deviceId + "/command";
+    }
+
+    private byte[] commandPayload(String correlationId, ControlCommandDto command) {
+        Map<String, String> payload = new LinkedHashMap<>();
+        payload.put("correlation_id", correlationId);
+        payload.put("control_id", command.controlId());
+        payload.put("value", command.value());
+        try {
+            return objectMapper.writeValueAsBytes(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Error serializing command payload", e);
+        }
+    }
+
+    private void handleAck(String deviceId, MqttMessage message, long sequence) throws Exception {
+        JsonFieldExtractor.Fields fields = jsonFieldExtractor.extract(message.getPayload(), ACK_FIELDS);
+        String correlationId = fields.getString("correlation_id");
+        if (correlationId == null) {
+            log.debug("Ignoring ack without correlation id from device {}", deviceId);
+            return;
+        }
+        String status = fields.getString("status");
+        boolean accepted = status == null
+                || !("error".equalsIgnoreCase(status) || "rejected".equalsIgnoreCase(status) || "failed".equalsIgnoreCase(status));
+        if (!pendingCommands.acknowledge(correlationId, deviceId, accepted, fields.getString("message"))) {
+            log.debug("No pending command {} for device {}", correlationId, deviceId);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.foodchain.device.service;
+
+import com.foodchain.device.service.StompSubscriptionRegistry.DeviceDestination;
+
+/**
+ * Carries device events between device-service replicas, so that a WebSocket client
+ * sees events ingested by any replica, not only the one it is connected to. The
+ * implementation is chosen with {@code app.websocket.fanout.mode}.
+ */
+public interface DeviceEventBus {
+
+    /**
+     * Forwards an event that has already been dispatched locally to every other node
+     * with a matching subscriber.
+     */
+    void publish(String deviceId, DeviceDestination kind, byte[] payload);
+
+    /** Returns {@code true} if some other node might want events at all. */
+    boolean hasRemoteSubscribers();
+
+    /** Sets where events received from other nodes are dispatched. */
+    void setLocalDelivery(Delivery delivery);
+
+    @FunctionalInterface
+    interface Delivery {
+
+        void deliver(String deviceId, DeviceDestination kind, byte[] payload);
+    }
+
+    /** Single-node deployments: nothing to forward. */
+    DeviceEventBus LOCAL = new DeviceEventBus() {
+        @Override
+        public void publish(String deviceId, DeviceDestination kind, byte[] payload) {
+        }
+
+        @Override
+        public boolean hasRemoteSubscribers() {
+            return false;
+        }
+
+        @Override
+        public void setLocalDelivery(Delivery delivery) {
+        }
+    };
+}
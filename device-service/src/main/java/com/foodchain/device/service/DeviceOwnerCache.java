@@ -0,0 +1,177 @@
+package com.foodchain.device.service;
+
+import com.foodchain.device.repository.DeviceJdbcRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches the owning user of each device. A device never changes owner, but it can be
+ * deleted through another replica, so entries are re-read after {@code ttl-ms}; unknown
+ * ids are remembered for {@code negative-ttl-ms} so that traffic from unregistered
+ * devices does not hit the database on every message.
+ * <p>
+ * {@link #cachedOwner} never goes to the database, which keeps it safe on the MQTT ingest
+ * path: a missing or expired entry is queued and looked up with the rest of the queue in
+ * one query every {@code resolve-interval-ms}.
+ */
+@Component
+public class DeviceOwnerCache {
+
+    private static final Logger log = LoggerFactory.getLogger(DeviceOwnerCache.class);
+
+    private final ConcurrentHashMap<UUID, Owner> owners = new ConcurrentHashMap<>();
+    private final Set<UUID> pending = ConcurrentHashMap.newKeySet();
+    private final DeviceJdbcRepository deviceJdbcRepository;
+    private final Counter misses;
+
+    @Value("${app.device.owner-cache.max-entries}")
+    private int maxEntries;
+
+    @Value("${app.device.owner-cache.ttl-ms}")
+    private long ttlMs;
+
+    @Value("${app.device.owner-cache.negative-ttl-ms}")
+    private long negativeTtlMs;
+
+    public DeviceOwnerCache(DeviceJdbcRepository deviceJdbcRepository, MeterRegistry meterRegistry) {
+        this.deviceJdbcRepository = deviceJdbcRepository;
+        Gauge.builder("device.owner.cache.size", owners, Map::size).register(meterRegistry);
+        this.misses = Counter.builder("device.owner.cache.misses").register(meterRegistry);
+    }
+
+    /**
+     * Returns the owner of the device, or {@code null} if no such device exists.
+     */
+    public UUID ownerOf(UUID deviceId) {
+        Owner owner = owners.get(deviceId);
+        long now = System.nanoTime();
+        if (owner != null && now < owner.expiresAt) {
+            return owner.userId;
+        }
+        misses.increment();
+        UUID userId = deviceJdbcRepository.findOwner(deviceId);
+        store(deviceId, owner(userId, now));
+        return userId;
+    }
+
+    /**
+     * Returns the cached owner without going to the database, or {@code null} if the
+     * device is not cached or is known not to exist. A missing or expired entry is queued
+     * for the next batch lookup; an expired owner is still returned until then.
+     */
+    public UUID cachedOwner(UUID deviceId) {
+        Owner owner = owners.get(deviceId);
+        if ((owner == null || System.nanoTime() >= owner.expiresAt) && pending.size() < maxEntries) {
+            pending.add(deviceId);
+        }
+        return owner != null ? owner.userId : null;
+    }
+
+    @Scheduled(fixedDelayString = "${app.device.owner-cache.resolve-interval-ms}")
+    public void resolvePending() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<UUID> deviceIds = new ArrayList<>(pending);
+        pending.removeAll(deviceIds);
+        try {
+            ownersOf(deviceIds);
+        } catch (DataAccessException e) {
+            log.warn("Failed to resolve owners of {} devices: {}", deviceIds.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * Looks up the owners of several devices with a single query and caches the result,
+     * including the ids that do not exist. Devices already cached are not queried.
+     */
+    public Map<UUID, UUID> ownersOf(Collection<UUID> deviceIds) {
+        Map<UUID, UUID> result = new HashMap<>();
+        List<UUID> missing = new ArrayList<>();
+        long now = System.nanoTime();
+        for (UUID deviceId : deviceIds) {
+            Owner owner = owners.get(deviceId);
+            if (owner != null && now < owner.expiresAt) {
+                if (owner.userId != null) {
+                    result.put(deviceId, owner.userId);
+                }
+            } else {
+                missing.add(deviceId);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+        misses.increment(missing.size());
+        Map<UUID, UUID> found = deviceJdbcRepository.findOwners(missing);
+        for (UUID deviceId : missing) {
+            UUID userId = found.get(deviceId);
+            store(deviceId, owner(userId, now));
+            if (userId != null) {
+                result.put(deviceId, userId);
+            }
+        }
+        return result;
+    }
+
+    public boolean isOwnedBy(UUID deviceId, UUID userId) {
+        return userId.equals(ownerOf(deviceId));
+    }
+
+    public void put(UUID deviceId, UUID userId) {
+        store(deviceId, owner(userId, System.nanoTime()));
+    }
+
+    /**
+     * Drops the entry once the surrounding transaction has committed, so a concurrent
+     * lookup cannot cache the row again before the delete is visible.
+     */
+    public void evict(UUID deviceId) {
+        owners.remove(deviceId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    owners.remove(deviceId);
+                }
+            });
+        }
+    }
+
+    private void store(UUID deviceId, Owner owner) {
+        if (owners.size() >= maxEntries && !owners.containsKey(deviceId)) {
+            Iterator<UUID> iterator = owners.keySet().iterator();
+            if (iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+        owners.put(deviceId, owner);
+    }
+
+    private Owner owner(UUID userId, long now) {
+        return new Owner(userId, now + TimeUnit.MILLISECONDS.toNanos(userId != null ? ttlMs : negativeTtlMs));
+    }
+
+    private record Owner(UUID userId, long expiresAt) {}
+}
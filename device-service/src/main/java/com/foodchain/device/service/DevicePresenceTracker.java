@@ -0,0 +1,348 @@
+package com.foodchain.device.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps device liveness in memory. Any MQTT message marks a device online; explicit
+ * status messages (including a Last Will published on the status topic) set it either
+ * way. Devices that have sent a heartbeat are expired after {@code heartbeat-timeout-ms}
+ * of silence and all others after {@code idle-timeout-ms}, by a hashed timer wheel:
+ * entries are filed under their deadline tick and only re-filed when the wheel reaches
+ * them, so heartbeats never move entries. Only transitions are handed to
+ * {@link DeviceStatusWriteBehind} and {@link DeviceSnapshotCache}.
+ * <p>
+ * Only registered devices are tracked. The first message from an id the owner cache
+ * does not know yet is parked, and parked ids are resolved with one query per tick on
+ * the scheduler thread, so the ingest path never waits for the database and traffic
+ * from unknown ids cannot grow the table.
+ */
+@Component
+public class DevicePresenceTracker {
+
+    private static final Logger log = LoggerFactory.getLogger(DevicePresenceTracker.class);
+
+    private static final byte[] ONLINE_PAYLOAD = "{\"is_online\":true}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] OFFLINE_PAYLOAD = "{\"is_online\":false}".getBytes(StandardCharsets.UTF_8);
+
+    private final ConcurrentHashMap<UUID, Presence> presences = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<UUID, Observation> unresolved = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Presence>[] wheel;
+    private final long tickMs;
+    private final long timeoutMs;
+    private final long idleTimeoutMs;
+    private final int maxUnresolved;
+    private final DeviceStatusWriteBehind statusWriteBehind;
+    private final WebSocketNotificationService webSocketService;
+    private final DeviceSnapshotCache snapshotCache;
+    private final DeviceOwnerCache ownerCache;
+    private final AtomicInteger onlineCount = new AtomicInteger();
+    private final Counter expired;
+    private final Counter unresolvedDropped;
+
+    private volatile long currentTick;
+
+    @SuppressWarnings("unchecked")
+    public DevicePresenceTracker(DeviceStatusWriteBehind statusWriteBehind,
+                                 WebSocketNotificationService webSocketService,
+                                 DeviceSnapshotCache snapshotCache,
+                                 DeviceOwnerCache ownerCache,
+                                 @Value("${app.device.presence.heartbeat-timeout-ms}") long timeoutMs,
+                                 @Value("${app.device.presence.idle-timeout-ms}") long idleTimeoutMs,
+                                 @Value("${app.device.presence.tick-ms}") long tickMs,
+                                 @Value("${app.device.presence.wheel-size}") int wheelSize,
+                                 @Value("${app.device.presence.max-unresolved}") int maxUnresolved,
+                                 MeterRegistry meterRegistry) {
+        this.statusWriteBehind = statusWriteBehind;
+        this.webSocketService = webSocketService;
+        this.snapshotCache = snapshotCache;
+        this.ownerCache = ownerCache;
+        this.timeoutMs = timeoutMs;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.tickMs = tickMs;
+        this.maxUnresolved = maxUnresolved;
+        this.wheel = new ConcurrentLinkedQueue[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.currentTick = System.currentTimeMillis() / tickMs;
+
+        Gauge.builder("device.presence.tracked", presences, Map::size).register(meterRegistry);
+        Gauge.builder("device.presence.unresolved", unresolved, Map::size).register(meterRegistry);
+        Gauge.builder("device.presence.online", onlineCount, AtomicInteger::get).register(meterRegistry);
+        this.expired = Counter.builder("device.presence.expired").register(meterRegistry);
+        this.unresolvedDropped = Counter.builder("device.presence.unresolved.dropped").register(meterRegistry);
+    }
+
+    public void touch(UUID deviceId) {
+        Presence presence = presenceOf(deviceId);
+        if (presence != null) {
+            seen(presence, false);
+        } else {
+            park(deviceId, new Observation(Kind.TOUCH, -1));
+        }
+    }
+
+    public void heartbeat(UUID deviceId) {
+        Presence presence = presenceOf(deviceId);
+        if (presence != null) {
+            seen(presence, true);
+        } else {
+            park(deviceId, new Observation(Kind.HEARTBEAT, -1));
+        }
+    }
+
+    /**
+     * Applies an explicit status report. The raw payload is already pushed to WebSocket
+     * subscribers by the caller, so only the database write is queued, tagged with the
+     * report's journal sequence.
+     */
+    public void reportStatus(UUID deviceId, boolean online, long journalSequence) {
+        Presence presence = presenceOf(deviceId);
+        if (presence != null) {
+            reportStatus(presence, online, journalSequence);
+        } else {
+            park(deviceId, new Observation(online ? Kind.ONLINE : Kind.OFFLINE, journalSequence));
+        }
+    }
+
+    /**
+     * Queues a database write of the device's online flag even when presence has not
+     * changed, for replaying a status report whose write was lost. The tracked state is
+     * written if there is one, since it is newer than the replayed report; otherwise
+     * {@code online} is.
+     */
+    public void rewriteStatus(UUID deviceId, boolean online, long journalSequence) {
+        Presence presence = presences.get(deviceId);
+        Boolean tracked = presence != null ? presence.online : null;
+        statusWriteBehind.enqueue(deviceId, tracked != null ? tracked : online, journalSequence);
+    }
+
+    /**
+     * Returns the tracked online state, or {@code fallback} for devices this instance has
+     * not heard from since it started.
+     */
+    public boolean isOnline(UUID deviceId, boolean fallback) {
+        Presence presence = presences.get(deviceId);
+        Boolean online = presence != null ? presence.online : null;
+        return online != null ? online : fallback;
+    }
+
+    public void forget(UUID deviceId) {
+        unresolved.remove(deviceId);
+        Presence presence = presences.remove(deviceId);
+        if (presence != null) {
+            synchronized (presence) {
+                countTransition(presence.online, false);
+                presence.online = null;
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.device.presence.tick-ms}")
+    public void advance() {
+        resolveUnknown();
+        long now = System.currentTimeMillis();
+        long nowTick = now / tickMs;
+        long tick = Math.max(currentTick, nowTick - wheel.length);
+        List<Presence> refile = new ArrayList<>();
+        while (tick < nowTick) {
+            tick++;
+            currentTick = tick;
+            ConcurrentLinkedQueue<Presence> bucket = wheel[(int) (tick % wheel.length)];
+            Presence presence;
+            while ((presence = bucket.poll()) != null) {
+                expireOrRefile(presence, now, refile);
+            }
+            for (Presence pending : refile) {
+                schedule(pending, now);
+            }
+            refile.clear();
+        }
+    }
+
+    private Presence presenceOf(UUID deviceId) {
+        Presence presence = presences.get(deviceId);
+        if (presence != null) {
+            return presence;
+        }
+        UUID ownerId = ownerCache.cachedOwner(deviceId);
+        return ownerId != null ? presences.computeIfAbsent(deviceId, id -> new Presence(id, ownerId)) : null;
+    }
+
+    private void park(UUID deviceId, Observation observation) {
+        if (unresolved.size() >= maxUnresolved && !unresolved.containsKey(deviceId)) {
+            unresolvedDropped.increment();
+            return;
+        }
+        unresolved.merge(deviceId, observation, Observation::then);
+    }
+
+    private void resolveUnknown() {
+        if (unresolved.isEmpty()) {
+            return;
+        }
+        List<UUID> deviceIds = new ArrayList<>(unresolved.keySet());
+        Map<UUID, UUID> owners;
+        try {
+            owners = ownerCache.ownersOf(deviceIds);
+        } catch (DataAccessException e) {
+            log.warn("Could not resolve {} device ids for presence tracking: {}", deviceIds.size(), e.getMessage());
+            return;
+        }
+        for (UUID deviceId : deviceIds) {
+            Observation observation = unresolved.remove(deviceId);
+            UUID ownerId = owners.get(deviceId);
+            if (observation == null || ownerId == null) {
+                continue;
+            }
+            Presence presence = presences.computeIfAbsent(deviceId, id -> new Presence(id, ownerId));
+            switch (observation.kind()) {
+                case TOUCH -> seen(presence, false);
+                case HEARTBEAT -> seen(presence, true);
+                case ONLINE -> reportStatus(presence, true, observation.journalSequence());
+                case OFFLINE -> reportStatus(presence, false, observation.journalSequence());
+            }
+        }
+    }
+
+    private void reportStatus(Presence presence, boolean online, long journalSequence) {
+        boolean changed;
+        boolean schedule = false;
+        synchronized (presence) {
+            changed = presence.online == null || presence.online != online;
+            if (changed) {
+                countTransition(presence.online, online);
+            }
+            presence.online = online;
+            if (online) {
+                presence.lastSeen = System.currentTimeMillis();
+                schedule = !presence.scheduled;
+                presence.scheduled = true;
+            }
+        }
+        if (schedule) {
+            schedule(presence, presence.lastSeen);
+        }
+        if (changed) {
+            transition(presence, online, false, journalSequence);
+        }
+    }
+
+    private void seen(Presence presence, boolean heartbeat) {
+        boolean cameOnline;
+        boolean schedule;
+        synchronized (presence) {
+            presence.lastSeen = System.currentTimeMillis();
+            presence.heartbeat |= heartbeat;
+            cameOnline = !Boolean.TRUE.equals(presence.online);
+            if (cameOnline) {
+                countTransition(presence.online, true);
+            }
+            presence.online = true;
+            schedule = !presence.scheduled;
+            presence.scheduled = true;
+        }
+        if (schedule) {
+            schedule(presence, presence.lastSeen);
+        }
+        if (cameOnline) {
+            transition(presence, true, true, -1);
+        }
+    }
+
+    private void expireOrRefile(Presence presence, long now, List<Presence> refile) {
+        boolean expire = false;
+        synchronized (presence) {
+            if (!Boolean.TRUE.equals(presence.online) || presences.get(presence.deviceId) != presence) {
+                presence.scheduled = false;
+            } else if (now - presence.lastSeen >= timeoutOf(presence)) {
+                countTransition(presence.online, false);
+                presence.online = false;
+                presence.scheduled = false;
+                expire = true;
+            } else {
+                refile.add(presence);
+            }
+        }
+        if (expire) {
+            expired.increment();
+            transition(presence, false, true, -1);
+        }
+    }
+
+    /**
+     * Files the entry under its deadline, but never more than one heartbeat timeout out, so
+     * an entry filed while the device was idle is revisited in time once it starts sending
+     * heartbeats.
+     */
+    private void schedule(Presence presence, long now) {
+        long deadline = Math.min(presence.lastSeen + timeoutOf(presence), now + timeoutMs);
+        long deadlineTick = Math.max(deadline / tickMs + 1, currentTick + 1);
+        wheel[(int) (deadlineTick % wheel.length)].add(presence);
+    }
+
+    private long timeoutOf(Presence presence) {
+        return presence.heartbeat ? timeoutMs : idleTimeoutMs;
+    }
+
+    private void countTransition(Boolean previous, boolean online) {
+        if (online) {
+            onlineCount.incrementAndGet();
+        } else if (Boolean.TRUE.equals(previous)) {
+            onlineCount.decrementAndGet();
+        }
+    }
+
+    private void transition(Presence presence, boolean online, boolean notify, long journalSequence) {
+        statusWriteBehind.enqueue(presence.deviceId, online, journalSequence);
+        snapshotCache.updateOnline(presence.ownerId, presence.deviceId, online);
+        if (notify) {
+            webSocketService.sendDeviceStatus(presence.deviceId.toString(), online ? ONLINE_PAYLOAD : OFFLINE_PAYLOAD);
+        }
+    }
+
+    private static final class Presence {
+
+        private final UUID deviceId;
+        private final UUID ownerId;
+        private volatile Boolean online;
+        private volatile long lastSeen;
+        private volatile boolean heartbeat;
+        private boolean scheduled;
+
+        private Presence(UUID deviceId, UUID ownerId) {
+            this.deviceId = deviceId;
+            this.ownerId = ownerId;
+        }
+    }
+
+    private enum Kind { TOUCH, HEARTBEAT, ONLINE, OFFLINE }
+
+    /**
+     * What was last heard from a device whose owner is still being resolved. A heartbeat
+     * is not downgraded by a later plain message, but an explicit status always wins.
+     */
+    private record Observation(Kind kind, long journalSequence) {
+
+        private Observation then(Observation next) {
+            return kind == Kind.HEARTBEAT && next.kind == Kind.TOUCH ? this : next;
+        }
+    }
+}
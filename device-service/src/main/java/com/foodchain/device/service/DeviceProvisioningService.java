@@ -0,0 +1,144 @@
+package com.foodchain.device.service;
+
+import com.foodchain.common.dto.device.BulkCreateDevicesRequest;
+import com.foodchain.common.dto.device.BulkCreateDevicesResultDto;
+import com.foodchain.common.dto.device.BulkCreateItemResultDto;
+import com.foodchain.common.dto.device.CreateDeviceRequest;
+import com.foodchain.common.dto.device.DeviceControlDto;
+import com.foodchain.common.exception.BadRequestException;
+import com.foodchain.device.entity.ControlType;
+import com.foodchain.device.entity.DeviceType;
+import com.foodchain.device.repository.DeviceJdbcRepository;
+import com.foodchain.device.repository.DeviceJdbcRepository.NewDevice;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Creates many devices in one request. Every item is validated up front and reported on
+ * individually; the valid ones are inserted with application-generated ids through JDBC
+ * batches in a single transaction, bypassing the per-entity flush of {@link DeviceService}.
+ */
+@Service
+public class DeviceProvisioningService {
+
+    private static final int MAX_TEXT_LENGTH = 255;
+    private static final int MAX_ADDRESS_LENGTH = 500;
+
+    private final DeviceJdbcRepository deviceJdbcRepository;
+    private final DeviceOwnerCache ownerCache;
+    private final DeviceSnapshotCache snapshotCache;
+
+    @Value("${app.device.bulk.max-devices}")
+    private int maxDevices;
+
+    @Value("${app.device.bulk.batch-size}")
+    private int batchSize;
+
+    public DeviceProvisioningService(DeviceJdbcRepository deviceJdbcRepository,
+                                     DeviceOwnerCache ownerCache,
+                                     DeviceSnapshotCache snapshotCache) {
+        this.deviceJdbcRepository = deviceJdbcRepository;
+        this.ownerCache = ownerCache;
+        this.snapshotCache = snapshotCache;
+    }
+
+    @Transactional
+    public BulkCreateDevicesResultDto createDevices(BulkCreateDevicesRequest request, UUID userId) {
+        List<CreateDeviceRequest> items = request.devices();
+        if (items.size() > maxDevices) {
+            throw new BadRequestException("At most " + maxDevices + " devices can be created at once");
+        }
+
+        List<BulkCreateItemResultDto> results = new ArrayList<>(items.size());
+        List<NewDevice> accepted = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            String error = validate(items.get(i));
+            if (error != null) {
+                results.add(new BulkCreateItemResultDto(i, null, error));
+                continue;
+            }
+            UUID id = UUID.randomUUID();
+            accepted.add(new NewDevice(id, items.get(i)));
+            results.add(new BulkCreateItemResultDto(i, id.toString(), null));
+        }
+
+        if (!accepted.isEmpty()) {
+            deviceJdbcRepository.insertDevices(userId, accepted, batchSize);
+            for (NewDevice device : accepted) {
+                ownerCache.put(device.id(), userId);
+            }
+            snapshotCache.invalidate(userId);
+        }
+        return new BulkCreateDevicesResultDto(accepted.size(), items.size() - accepted.size(), results);
+    }
+
+    private static String validate(CreateDeviceRequest device) {
+        if (device == null) {
+            return "device must not be null";
+        }
+        if (isBlank(device.name()) || device.name().length() > MAX_TEXT_LENGTH) {
+            return "name must be 1 to " + MAX_TEXT_LENGTH + " characters";
+        }
+        if (!isEnumConstant(DeviceType.class, device.type())) {
+            return "Unknown device type: " + device.type();
+        }
+        if (device.location() == null) {
+            return "location must not be null";
+        }
+        if (tooLong(device.location().address(), MAX_ADDRESS_LENGTH)
+                || tooLong(device.location().label(), MAX_TEXT_LENGTH)
+                || tooLong(device.mqttTopicPrefix(), MAX_TEXT_LENGTH)) {
+            return "location or mqttTopicPrefix exceeds the maximum length";
+        }
+        if (device.controls() != null) {
+            for (DeviceControlDto control : device.controls()) {
+                String error = validate(control);
+                if (error != null) {
+                    return error;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String validate(DeviceControlDto control) {
+        if (control == null) {
+            return "control must not be null";
+        }
+        if (isBlank(control.name()) || control.name().length() > MAX_TEXT_LENGTH) {
+            return "control name must be 1 to " + MAX_TEXT_LENGTH + " characters";
+        }
+        if (!isEnumConstant(ControlType.class, control.controlType())) {
+            return "Unknown control type: " + control.controlType();
+        }
+        if (tooLong(control.currentValue(), MAX_TEXT_LENGTH) || tooLong(control.mqttTopic(), MAX_TEXT_LENGTH)) {
+            return "control " + control.name() + " exceeds the maximum length";
+        }
+        return null;
+    }
+
+    private static <E extends Enum<E>> boolean isEnumConstant(Class<E> type, String name) {
+        if (name == null) {
+            return false;
+        }
+        try {
+            Enum.valueOf(type, name);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    private static boolean tooLong(String value, int maxLength) {
+        return value != null && value.length() > maxLength;
+    }
+}
@@ -1,38 +1,102 @@
 package com.foodchain.device.service;
 
 import com.foodchain.common.dto.device.*;
+import com.foodchain.common.exception.BadRequestException;
 import com.foodchain.common.exception.ResourceNotFoundException;
 import com.foodchain.device.entity.DeviceEntity;
+import com.foodchain.device.entity.DeviceType;
 import com.foodchain.device.mapper.DeviceMapper;
+import com.foodchain.device.repository.DeviceJdbcRepository;
+import com.foodchain.device.repository.DeviceJdbcRepository.DevicePage;
+import com.foodchain.device.repository.DeviceJdbcRepository.PageKey;
 import com.foodchain.device.repository.DeviceRepository;
+import com.foodchain.device.repository.DeviceTombstoneJdbcRepository;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.BiPredicate;
 
 @Service
 public class DeviceService {
 
     private final DeviceRepository deviceRepository;
+    private final DeviceJdbcRepository deviceJdbcRepository;
+    private final DeviceTombstoneJdbcRepository tombstoneRepository;
     private final DeviceMapper deviceMapper;
+    private final DevicePresenceTracker presenceTracker;
+    private final DeviceOwnerCache ownerCache;
+    private final DeviceSnapshotCache snapshotCache;
+
+    @Value("${app.device.page.default-size}")
+    private int defaultPageSize;
+
+    @Value("${app.device.page.max-size}")
+    private int maxPageSize;
 
     public DeviceService(DeviceRepository deviceRepository,
-                         DeviceMapper deviceMapper) {
+                         DeviceJdbcRepository deviceJdbcRepository,
+                         DeviceTombstoneJdbcRepository tombstoneRepository,
+                         DeviceMapper deviceMapper,
+                         DevicePresenceTracker presenceTracker,
+                         DeviceOwnerCache ownerCache,
+                         DeviceSnapshotCache snapshotCache) {
         this.deviceRepository = deviceRepository;
+        this.deviceJdbcRepository = deviceJdbcRepository;
+        this.tombstoneRepository = tombstoneRepository;
         this.deviceMapper = deviceMapper;
+        this.presenceTracker = presenceTracker;
+        this.ownerCache = ownerCache;
+        this.snapshotCache = snapshotCache;
     }
 
-    public List<DeviceDto> getAllDevices(UUID userId) {
-        return deviceRepository.findAllByUserId(userId).stream()
-                .map(deviceMapper::toDto)
-                .toList();
+    public long getDevicesVersion(UUID userId) {
+        return snapshotCache.version(userId);
+    }
+
+    public String getDevicesEtag(UUID userId, long version) {
+        return snapshotCache.etag(userId, version);
+    }
+
+    public List<DeviceDto> getAllDevices(UUID userId, long version) {
+        return snapshotCache.devices(userId, version,
+                id -> deviceJdbcRepository.findDevicesByUserId(id, presenceTracker::isOnline));
+    }
+
+    /**
+     * Without an {@code online} filter the reported flag is the live presence state. With
+     * one, the filter runs on the stored {@code is_online} column and the same column is
+     * reported, so every row matches the filter; it trails presence by the status flush
+     * interval.
+     */
+    public DevicePageDto getDevicePage(UUID userId, String type, Boolean online, String locationLabel,
+                                       String cursor, Integer limit) {
+        int pageSize = limit != null ? limit : defaultPageSize;
+        if (pageSize < 1 || pageSize > maxPageSize) {
+            throw new BadRequestException("limit must be between 1 and " + maxPageSize);
+        }
+        BiPredicate<UUID, Boolean> onlineState = online != null ? (id, stored) -> stored : presenceTracker::isOnline;
+        DevicePage page = deviceJdbcRepository.findDevicePage(userId, parseType(type), online, locationLabel,
+                decodeCursor(cursor), pageSize, onlineState);
+        return new DevicePageDto(page.devices(), page.next() != null ? encodeCursor(page.next()) : null);
     }
 
     public DeviceDto getDevice(UUID deviceId, UUID userId) {
+        DeviceDto cached = snapshotCache.device(userId, deviceId);
+        if (cached != null) {
+            return cached;
+        }
         DeviceEntity device = deviceRepository.findByIdAndUserId(deviceId, userId)
                 .orElseThrow(() -> new ResourceNotFoundException("Device not found"));
-        return deviceMapper.toDto(device);
+        return toDto(device);
     }
 
     @Transactional
@@ -42,6 +106,8 @@ public class DeviceService {
         deviceMapper.applyCreateRequest(request, device);
 
         device = deviceRepository.save(device);
+        ownerCache.put(device.getId(), userId);
+        snapshotCache.invalidate(userId);
         return deviceMapper.toDto(device);
     }
 
@@ -51,9 +117,12 @@ public class DeviceService {
                 .orElseThrow(() -> new ResourceNotFoundException("Device not found"));
 
         deviceMapper.applyUpdateRequest(request, device);
+        // a controls-only change leaves the device row clean, and delta sync relies on updated_at
+        device.setUpdatedAt(Instant.now());
 
         device = deviceRepository.save(device);
-        return deviceMapper.toDto(device);
+        snapshotCache.invalidate(userId);
+        return toDto(device);
     }
 
     @Transactional
@@ -61,5 +130,49 @@ public class DeviceService {
         DeviceEntity device = deviceRepository.findByIdAndUserId(deviceId, userId)
                 .orElseThrow(() -> new ResourceNotFoundException("Device not found"));
         deviceRepository.delete(device);
+        tombstoneRepository.insert(deviceId, userId);
+        presenceTracker.forget(deviceId);
+        ownerCache.evict(deviceId);
+        snapshotCache.invalidate(userId);
+    }
+
+    private static DeviceType parseType(String type) {
+        if (type == null) {
+            return null;
+        }
+        try {
+            return DeviceType.valueOf(type);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Unknown device type: " + type);
+        }
+    }
+
+    /**
+     * Cursors are the opaque form of the last row's {@code (created_at, id)}, with the
+     * timestamp in epoch microseconds so that no Postgres precision is lost.
+     */
+    private static String encodeCursor(PageKey key) {
+        long micros = ChronoUnit.MICROS.between(Instant.EPOCH, key.createdAt().toInstant());
+        String raw = micros + ":" + key.id();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static PageKey decodeCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII);
+            int separator = raw.indexOf(':');
+            long micros = Long.parseLong(raw.substring(0, separator));
+            OffsetDateTime createdAt = Instant.EPOCH.plus(micros, ChronoUnit.MICROS).atOffset(ZoneOffset.UTC);
+            return new PageKey(createdAt, UUID.fromString(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new BadRequestException("Invalid cursor");
+        }
+    }
+
+    private DeviceDto toDto(DeviceEntity device) {
+        return deviceMapper.toDto(device, presenceTracker.isOnline(device.getId(), device.isOnline()));
     }
 }
@@ -0,0 +1,235 @@
+package com.foodchain.device.service;
+
+import com.foodchain.common.dto.device.DeviceDto;
+import com.foodchain.device.repository.DeviceListingVersionJdbcRepository;
+import com.foodchain.device.repository.DeviceListingVersionJdbcRepository.VersionChange;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * Caches the full device listing of recently active users, so dashboards polling
+ * {@code GET /devices} are served from memory. Each snapshot remembers the user's listing
+ * version from {@code device_listing_versions} at the time it was loaded and is only
+ * served while it matches the version this replica knows. Known versions are read from
+ * the database once per user and then kept current by polling for rows bumped since the
+ * last poll, so a structural change made through any replica is seen everywhere within
+ * {@code refresh-interval-ms}, and serving a cached listing or a 304 reads nothing.
+ * Local changes also drop the snapshot and the known version right away. Online flips
+ * never bump the version: they are patched into the snapshot in place on presence
+ * transitions, and a reload takes them from the presence tracker. Capacity is counted in devices rather than users so that a few
+ * fleet accounts cannot pin an unbounded amount of memory.
+ * <p>
+ * The user id and version make up the listing's ETag, so every replica issues and accepts
+ * the same tags. It is weak, because the online flags in the body come from each
+ * replica's own presence state and do not move the version.
+ */
+@Component
+public class DeviceSnapshotCache {
+
+    private static final Logger log = LoggerFactory.getLogger(DeviceSnapshotCache.class);
+
+    private final DeviceListingVersionJdbcRepository versionRepository;
+    private final Cache<UUID, Snapshot> snapshots;
+    private final Cache<UUID, Long> versions;
+    private final Counter stale;
+    private final Duration refreshGrace;
+
+    private OffsetDateTime refreshedThrough;
+
+    public DeviceSnapshotCache(DeviceListingVersionJdbcRepository versionRepository,
+                               @Value("${app.device.snapshot-cache.max-devices}") long maxDevices,
+                               @Value("${app.device.snapshot-cache.ttl-ms}") long ttlMs,
+                               @Value("${app.device.snapshot-cache.max-versions}") long maxVersions,
+                               @Value("${app.device.snapshot-cache.refresh-grace-ms}") long refreshGraceMs,
+                               MeterRegistry meterRegistry) {
+        this.versionRepository = versionRepository;
+        this.refreshGrace = Duration.ofMillis(refreshGraceMs);
+        this.snapshots = Caffeine.newBuilder()
+                .maximumWeight(maxDevices)
+                .<UUID, Snapshot>weigher((userId, snapshot) -> snapshot.devices.length() + 1)
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .recordStats()
+                .build();
+        this.versions = Caffeine.newBuilder()
+                .maximumSize(maxVersions)
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, snapshots, "device.snapshots");
+        this.stale = Counter.builder("device.snapshots.stale")
+                .description("Cached device listings reloaded because the database version had moved")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the listing version this replica knows for the user, reading it from the
+     * database only if the user has none cached. Read it once per request and pass it to
+     * {@link #etag} and {@link #devices}, before reading the listing, so that a concurrent
+     * change can only make the tag older than the body.
+     */
+    public long version(UUID userId) {
+        return versions.get(userId, versionRepository::find);
+    }
+
+    public String etag(UUID userId, long version) {
+        return "W/\"" + userId + "-" + version + "\"";
+    }
+
+    /**
+     * Returns the user's listing, loading it with {@code loader} when there is no snapshot
+     * or the cached one was taken at another version.
+     */
+    public List<DeviceDto> devices(UUID userId, long version, Function<UUID, List<DeviceDto>> loader) {
+        Function<UUID, Snapshot> load = id -> new Snapshot(version, loader.apply(id));
+        Snapshot snapshot = snapshots.get(userId, load);
+        if (snapshot.version != version) {
+            stale.increment();
+            snapshots.asMap().remove(userId, snapshot);
+            snapshot = snapshots.get(userId, load);
+        }
+        return snapshot.list();
+    }
+
+    /**
+     * Returns the device from the user's cached snapshot, or {@code null} if the user has
+     * no current snapshot or does not own the device.
+     */
+    public DeviceDto device(UUID userId, UUID deviceId) {
+        Snapshot snapshot = snapshots.getIfPresent(userId);
+        if (snapshot == null) {
+            return null;
+        }
+        Long version = versions.getIfPresent(userId);
+        if (version == null || snapshot.version != version) {
+            stale.increment();
+            snapshots.asMap().remove(userId, snapshot);
+            return null;
+        }
+        return snapshot.get(deviceId);
+    }
+
+    /**
+     * Picks up versions bumped on any replica since the last run. The window reaches
+     * {@code refresh-grace-ms} further back, by the database clock, so a bump whose
+     * transaction committed after a later one was already seen is not missed. A failed run
+     * leaves the window where it was.
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${app.device.snapshot-cache.refresh-interval-ms}")
+    public void refreshVersions() {
+        try {
+            if (refreshedThrough == null) {
+                refreshedThrough = versionRepository.now();
+                return;
+            }
+            OffsetDateTime through = refreshedThrough;
+            for (VersionChange change : versionRepository.findChangedSince(refreshedThrough.minus(refreshGrace))) {
+                Long known = versions.getIfPresent(change.userId());
+                if (known != null && known < change.version()) {
+                    versions.put(change.userId(), change.version());
+                    snapshots.invalidate(change.userId());
+                }
+                if (change.changedAt().isAfter(through)) {
+                    through = change.changedAt();
+                }
+            }
+            refreshedThrough = through;
+        } catch (DataAccessException e) {
+            log.warn("Failed to refresh device listing versions: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Records a change to the user's devices. Bumps the listing version in the surrounding
+     * transaction, which other replicas pick up on their next refresh, and drops the local
+     * snapshot and known version now and again once the transaction has committed, so a
+     * listing read in between cannot be cached with the old rows.
+     */
+    public void invalidate(UUID userId) {
+        versionRepository.bump(userId);
+        snapshots.invalidate(userId);
+        versions.invalidate(userId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    snapshots.invalidate(userId);
+                    versions.invalidate(userId);
+                }
+            });
+        }
+    }
+
+    /**
+     * Patches the online flag in the owner's snapshot. The owner is passed in by the
+     * presence tracker, which resolves it once per device, so this never queries the
+     * database on the ingest path.
+     */
+    public void updateOnline(UUID userId, UUID deviceId, boolean online) {
+        if (snapshots.estimatedSize() == 0) {
+            return;
+        }
+        Snapshot snapshot = snapshots.asMap().get(userId);
+        if (snapshot != null) {
+            snapshot.setOnline(deviceId, online);
+        }
+    }
+
+    private static final class Snapshot {
+
+        private final long version;
+        private final Map<UUID, Integer> positions;
+        private final AtomicReferenceArray<DeviceDto> devices;
+
+        private Snapshot(long version, List<DeviceDto> devices) {
+            this.version = version;
+            this.positions = new HashMap<>(devices.size() * 2);
+            this.devices = new AtomicReferenceArray<>(devices.toArray(DeviceDto[]::new));
+            for (int i = 0; i < devices.size(); i++) {
+                positions.put(UUID.fromString(devices.get(i).id()), i);
+            }
+        }
+
+        private List<DeviceDto> list() {
+            List<DeviceDto> list = new ArrayList<>(devices.length());
+            for (int i = 0; i < devices.length(); i++) {
+                list.add(devices.get(i));
+            }
+            return list;
+        }
+
+        private DeviceDto get(UUID deviceId) {
+            Integer position = positions.get(deviceId);
+            return position != null ? devices.get(position) : null;
+        }
+
+        private void setOnline(UUID deviceId, boolean online) {
+            Integer position = positions.get(deviceId);
+            if (position == null) {
+                return;
+            }
+            devices.updateAndGet(position, device -> device.isOnline() == online ? device : new DeviceDto(
+                    device.id(), device.name(), device.type(), online, device.location(), device.controls(),
+                    device.mqttTopicPrefix(), device.createdAt(), device.updatedAt()));
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.foodchain.device.service;
+
+import com.foodchain.device.repository.DeviceStatusJdbcRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Coalesces device online/offline updates in memory and writes only the latest
+ * value per device, in batches, on a short interval. An update that is dropped after
+ * {@code max-retries} marks the journal record it came from failed.
+ */
+@Service
+public class DeviceStatusWriteBehind {
+
+    private static final Logger log = LoggerFactory.getLogger(DeviceStatusWriteBehind.class);
+
+    private final DeviceStatusJdbcRepository statusRepository;
+    private final IngestJournal ingestJournal;
+    private final ConcurrentHashMap<UUID, StatusUpdate> pending = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<UUID, Integer> failedAttempts = new ConcurrentHashMap<>();
+    private final Counter written;
+    private final Counter dropped;
+
+    @Value("${app.device.status.batch-size}")
+    private int batchSize;
+
+    @Value("${app.device.status.max-retries}")
+    private int maxRetries;
+
+    public DeviceStatusWriteBehind(DeviceStatusJdbcRepository statusRepository, IngestJournal ingestJournal,
+                                   MeterRegistry meterRegistry) {
+        this.statusRepository = statusRepository;
+        this.ingestJournal = ingestJournal;
+        Gauge.builder("device.status.pending", pending, Map::size).register(meterRegistry);
+        this.written = Counter.builder("device.status.written").register(meterRegistry);
+        this.dropped = Counter.builder("device.status.dropped").register(meterRegistry);
+    }
+
+    /**
+     * Queues the device's new state. {@code journalSequence} is the status message it came
+     * from, or {@code -1} for transitions the tracker derived itself.
+     */
+    public void enqueue(UUID deviceId, boolean online, long journalSequence) {
+        pending.put(deviceId, new StatusUpdate(deviceId, online, journalSequence));
+    }
+
+    @Scheduled(fixedDelayString = "${app.device.status.flush-interval-ms}")
+    public void flush() {
+        while (!pending.isEmpty()) {
+            List<StatusUpdate> online = new ArrayList<>();
+            List<StatusUpdate> offline = new ArrayList<>();
+            Iterator<Map.Entry<UUID, StatusUpdate>> it = pending.entrySet().iterator();
+            while (it.hasNext() && online.size() + offline.size() < batchSize) {
+                Map.Entry<UUID, StatusUpdate> entry = it.next();
+                if (pending.remove(entry.getKey(), entry.getValue())) {
+                    (entry.getValue().online() ? online : offline).add(entry.getValue());
+                }
+            }
+
+            // both lists are already drained from pending, so each gets its own attempt
+            boolean onlineWritten = write(online, true);
+            boolean offlineWritten = write(offline, false);
+            if (!onlineWritten || !offlineWritten) {
+                return;
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    private boolean write(List<StatusUpdate> updates, boolean online) {
+        if (updates.isEmpty()) {
+            return true;
+        }
+        List<UUID> deviceIds = updates.stream().map(StatusUpdate::deviceId).toList();
+        try {
+            int updated = statusRepository.updateOnlineStatus(deviceIds, online);
+            written.increment(updated);
+            deviceIds.forEach(failedAttempts::remove);
+            log.debug("Flushed {} device status updates (online={}), {} rows changed", deviceIds.size(), online, updated);
+            return true;
+        } catch (DataAccessException e) {
+            log.warn("Failed to flush {} device status updates: {}", deviceIds.size(), e.getMessage());
+            requeue(updates);
+            return false;
+        }
+    }
+
+    private void requeue(List<StatusUpdate> updates) {
+        for (StatusUpdate update : updates) {
+            int attempts = failedAttempts.merge(update.deviceId(), 1, Integer::sum);
+            if (attempts > maxRetries) {
+                failedAttempts.remove(update.deviceId());
+                dropped.increment();
+                ingestJournal.markFailed(update.journalSequence());
+                log.error("Dropping status update for device {} after {} failed attempts", update.deviceId(), maxRetries);
+            } else {
+                pending.putIfAbsent(update.deviceId(), update);
+            }
+        }
+    }
+
+    private record StatusUpdate(UUID deviceId, boolean online, long journalSequence) {}
+}
@@ -0,0 +1,545 @@
+package com.foodchain.device.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of inbound MQTT messages, split into size-capped segment files
+ * named after their first sequence number and receive time. Records are written with
+ * a gathering {@link FileChannel} write straight from the topic and payload arrays and
+ * forced to disk by a periodic group fsync rather than per message. Sequence numbers
+ * of messages whose processing failed or was shed are kept in a separate log so they
+ * can be replayed later.
+ *
+ * <p>Record layout: {@code length, crc, sequence, receivedAt, topicLength, payloadLength,
+ * topic, payload}; {@code length} and {@code crc} cover everything after the crc.
+ */
+@Component
+public class IngestJournal {
+
+    private static final Logger log = LoggerFactory.getLogger(IngestJournal.class);
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String FAILED_FILE = "failed.log";
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 2 + 4;
+    private static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+
+    private final boolean enabled;
+    private final Path directory;
+    private final long segmentSize;
+    private final long retentionMillis;
+    private final long maxTotalBytes;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    private final ByteBuffer failedRecord = ByteBuffer.allocate(8);
+    private final CRC32 crc = new CRC32();
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private final NavigableSet<Long> failed = new ConcurrentSkipListSet<>();
+    private final Counter appended;
+    private final Counter appendErrors;
+
+    private FileChannel active;
+    private FileChannel failedLog;
+    private long lastSequence;
+    private volatile boolean dirty;
+
+    public IngestJournal(@Value("${app.mqtt.journal.enabled}") boolean enabled,
+                         @Value("${app.mqtt.journal.directory}") String directory,
+                         @Value("${app.mqtt.journal.segment-size-mb}") long segmentSizeMb,
+                         @Value("${app.mqtt.journal.retention-hours}") long retentionHours,
+                         @Value("${app.mqtt.journal.max-total-mb}") long maxTotalMb,
+                         MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+        this.segmentSize = segmentSizeMb * 1024 * 1024;
+        this.retentionMillis = TimeUnit.HOURS.toMillis(retentionHours);
+        this.maxTotalBytes = maxTotalMb * 1024 * 1024;
+
+        this.appended = Counter.builder("mqtt.journal.appended").register(meterRegistry);
+        this.appendErrors = Counter.builder("mqtt.journal.errors").register(meterRegistry);
+        Gauge.builder("mqtt.journal.failed", failed, NavigableSet::size).register(meterRegistry);
+        Gauge.builder("mqtt.journal.bytes", segments, s -> s.stream().mapToLong(Segment::size).sum())
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(directory);
+        List<Segment> found = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                Segment segment = Segment.parse(file);
+                if (segment != null) {
+                    found.add(segment);
+                }
+            }
+        }
+        found.sort(Comparator.comparingLong(Segment::firstSequence));
+        segments.addAll(found);
+
+        if (!segments.isEmpty()) {
+            Segment last = segments.get(segments.size() - 1);
+            long[] recovered = recover(last);
+            lastSequence = recovered[0];
+            last.size = recovered[1];
+            active = FileChannel.open(last.path, StandardOpenOption.WRITE);
+            active.truncate(last.size);
+            active.position(last.size);
+        }
+        loadFailed();
+        log.info("Ingest journal opened at {} with {} segments, last sequence {}, {} failed messages",
+                directory, segments.size(), lastSequence, failed.size());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Appends a message and returns its sequence number, or {@code -1} if the journal is
+     * disabled or the write failed. Never blocks on fsync.
+     */
+    public long append(String topic, byte[] payload, long receivedAt) {
+        if (!enabled) {
+            return -1;
+        }
+        byte[] topicBytes = topic.getBytes(StandardCharsets.UTF_8);
+        int recordSize = HEADER_SIZE + topicBytes.length + payload.length;
+        lock.lock();
+        try {
+            Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+            if (active == null || segment.size + recordSize > segmentSize && segment.size > 0) {
+                segment = roll(receivedAt);
+            }
+            long sequence = lastSequence + 1;
+
+            header.clear();
+            header.putInt(recordSize - 8).putInt(0).putLong(sequence).putLong(receivedAt)
+                    .putShort((short) topicBytes.length).putInt(payload.length);
+            crc.reset();
+            crc.update(header.array(), 8, HEADER_SIZE - 8);
+            crc.update(topicBytes);
+            crc.update(payload);
+            header.putInt(4, (int) crc.getValue());
+            header.flip();
+
+            ByteBuffer[] record = {header, ByteBuffer.wrap(topicBytes), ByteBuffer.wrap(payload)};
+            long remaining = recordSize;
+            while (remaining > 0) {
+                remaining -= active.write(record);
+            }
+            lastSequence = sequence;
+            segment.size += recordSize;
+            dirty = true;
+            appended.increment();
+            return sequence;
+        } catch (IOException e) {
+            appendErrors.increment();
+            log.error("Failed to append MQTT message on {} to ingest journal: {}", topic, e.getMessage());
+            return -1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void markFailed(long sequence) {
+        if (sequence < 0 || !failed.add(sequence)) {
+            return;
+        }
+        writeFailedRecord(sequence);
+    }
+
+    public void markResolved(long sequence) {
+        if (failed.remove(sequence)) {
+            writeFailedRecord(-sequence);
+        }
+    }
+
+    public int failedCount() {
+        return failed.size();
+    }
+
+    public long lastSequence() {
+        lock.lock();
+        try {
+            return lastSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public List<Segment> segments() {
+        return List.copyOf(segments);
+    }
+
+    /**
+     * Visits, in order, up to {@code limit} records received in {@code [fromMillis, toMillis)}.
+     * Stops early if the visitor returns {@code false}.
+     */
+    public void read(long fromMillis, long toMillis, int limit, RecordVisitor visitor) throws IOException {
+        List<Segment> snapshot = List.copyOf(segments);
+        int visited = 0;
+        for (int i = 0; i < snapshot.size() && visited < limit; i++) {
+            Segment segment = snapshot.get(i);
+            long segmentEnd = i + 1 < snapshot.size() ? snapshot.get(i + 1).firstReceivedAt : Long.MAX_VALUE;
+            if (segment.firstReceivedAt >= toMillis || segmentEnd < fromMillis) {
+                continue;
+            }
+            int[] count = {visited};
+            boolean more = scan(segment, record -> {
+                if (record.receivedAt() < fromMillis || record.receivedAt() >= toMillis) {
+                    return true;
+                }
+                count[0]++;
+                return visitor.visit(record) && count[0] < limit;
+            });
+            visited = count[0];
+            if (!more) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Visits up to {@code limit} failed records, oldest first. Records the visitor
+     * accepts are marked resolved.
+     */
+    public void readFailed(int limit, RecordVisitor visitor) throws IOException {
+        List<Segment> snapshot = List.copyOf(segments);
+        int visited = 0;
+        for (int i = 0; i < snapshot.size() && visited < limit; i++) {
+            Segment segment = snapshot.get(i);
+            long nextFirst = i + 1 < snapshot.size() ? snapshot.get(i + 1).firstSequence : Long.MAX_VALUE;
+            Long first = failed.ceiling(segment.firstSequence);
+            if (first == null || first >= nextFirst) {
+                continue;
+            }
+            int[] count = {visited};
+            boolean more = scan(segment, record -> {
+                if (!failed.contains(record.sequence())) {
+                    return true;
+                }
+                count[0]++;
+                if (visitor.visit(record)) {
+                    markResolved(record.sequence());
+                }
+                return count[0] < limit;
+            });
+            visited = count[0];
+            if (!more) {
+                return;
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.mqtt.journal.fsync-interval-ms}")
+    public void sync() {
+        if (!dirty) {
+            return;
+        }
+        FileChannel channel;
+        lock.lock();
+        try {
+            channel = active;
+            dirty = false;
+        } finally {
+            lock.unlock();
+        }
+        try {
+            if (channel != null && channel.isOpen()) {
+                channel.force(false);
+            }
+            if (failedLog != null) {
+                failedLog.force(false);
+            }
+        } catch (IOException e) {
+            dirty = true;
+            log.warn("Ingest journal fsync failed: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.mqtt.journal.maintenance-interval-ms}")
+    public void enforceRetention() {
+        if (!enabled) {
+            return;
+        }
+        long cutoff = System.currentTimeMillis() - retentionMillis;
+        long total = segments.stream().mapToLong(Segment::size).sum();
+        while (segments.size() > 1) {
+            Segment oldest = segments.get(0);
+            Segment next = segments.get(1);
+            if (next.firstReceivedAt >= cutoff && total <= maxTotalBytes) {
+                break;
+            }
+            segments.remove(0);
+            total -= oldest.size;
+            failed.headSet(next.firstSequence).clear();
+            try {
+                Files.deleteIfExists(oldest.path);
+                log.info("Deleted ingest journal segment {}", oldest.path.getFileName());
+            } catch (IOException e) {
+                log.warn("Could not delete ingest journal segment {}: {}", oldest.path, e.getMessage());
+            }
+        }
+        rewriteFailed();
+    }
+
+    @PreDestroy
+    public void close() {
+        lock.lock();
+        try {
+            if (active != null) {
+                active.force(false);
+                active.close();
+            }
+            if (failedLog != null) {
+                failedLog.force(false);
+                failedLog.close();
+            }
+        } catch (IOException e) {
+            log.warn("Error closing ingest journal: {}", e.getMessage());
+        } finally {
+            active = null;
+            failedLog = null;
+            lock.unlock();
+        }
+    }
+
+    private Segment roll(long receivedAt) throws IOException {
+        if (active != null) {
+            active.force(false);
+            active.close();
+        }
+        Segment segment = new Segment(directory.resolve(
+                SEGMENT_PREFIX + String.format("%019d-%d", lastSequence + 1, receivedAt) + SEGMENT_SUFFIX),
+                lastSequence + 1, receivedAt);
+        active = FileChannel.open(segment.path,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        segments.add(segment);
+        return segment;
+    }
+
+    /**
+     * Reads {@code segment} up to its first torn or corrupt record and returns the last
+     * valid sequence number and the offset just past it.
+     */
+    private long[] recover(Segment segment) throws IOException {
+        long[] result = {segment.firstSequence - 1, 0};
+        segment.size = Files.size(segment.path);
+        scan(segment, record -> {
+            result[0] = record.sequence();
+            result[1] = record.endOffset();
+            return true;
+        });
+        return result;
+    }
+
+    /**
+     * Visits the valid records of a segment in order. Returns {@code false} if the
+     * visitor stopped the scan.
+     */
+    private boolean scan(Segment segment, RecordVisitor visitor) throws IOException {
+        long limit = segment.size;
+        try (FileChannel channel = FileChannel.open(segment.path, StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(HEADER_SIZE);
+            long position = 0;
+            while (position + HEADER_SIZE <= limit) {
+                head.clear();
+                readFully(channel, head, position);
+                head.flip();
+                int length = head.getInt();
+                int checksum = head.getInt();
+                long sequence = head.getLong();
+                long receivedAt = head.getLong();
+                int topicLength = head.getShort() & 0xFFFF;
+                int payloadLength = head.getInt();
+                if (length != HEADER_SIZE - 8 + topicLength + payloadLength || length > MAX_RECORD_SIZE
+                        || position + 8 + length > limit) {
+                    return true;
+                }
+
+                ByteBuffer body = ByteBuffer.allocate(topicLength + payloadLength);
+                readFully(channel, body, position + HEADER_SIZE);
+                CRC32 check = new CRC32();
+                check.update(head.array(), 8, HEADER_SIZE - 8);
+                check.update(body.array());
+                if ((int) check.getValue() != checksum) {
+                    log.warn("Corrupt ingest journal record at offset {} in {}", position, segment.path.getFileName());
+                    return true;
+                }
+
+                byte[] bytes = body.array();
+                byte[] payload = new byte[payloadLength];
+                System.arraycopy(bytes, topicLength, payload, 0, payloadLength);
+                position += 8 + length;
+                if (!visitor.visit(new JournalRecord(sequence, receivedAt,
+                        new String(bytes, 0, topicLength, StandardCharsets.UTF_8), payload, position))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of ingest journal segment");
+            }
+        }
+    }
+
+    private void loadFailed() throws IOException {
+        Path path = directory.resolve(FAILED_FILE);
+        if (Files.exists(path)) {
+            ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(path));
+            while (bytes.remaining() >= 8) {
+                long sequence = bytes.getLong();
+                if (sequence > 0) {
+                    failed.add(sequence);
+                } else {
+                    failed.remove(-sequence);
+                }
+            }
+        }
+        if (!segments.isEmpty()) {
+            failed.headSet(segments.get(0).firstSequence).clear();
+        }
+        failed.tailSet(lastSequence, false).clear();
+        failedLog = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void writeFailedRecord(long value) {
+        synchronized (failedRecord) {
+            if (failedLog == null) {
+                return;
+            }
+            try {
+                failedRecord.clear();
+                failedRecord.putLong(value).flip();
+                while (failedRecord.hasRemaining()) {
+                    failedLog.write(failedRecord);
+                }
+                dirty = true;
+            } catch (IOException e) {
+                log.error("Failed to record failed message {} in ingest journal: {}", value, e.getMessage());
+            }
+        }
+    }
+
+    private void rewriteFailed() {
+        synchronized (failedRecord) {
+            if (failedLog == null) {
+                return;
+            }
+            Path path = directory.resolve(FAILED_FILE);
+            Path temp = directory.resolve(FAILED_FILE + ".tmp");
+            try {
+                ByteBuffer bytes = ByteBuffer.allocate(8 * failed.size() + 8);
+                Iterator<Long> it = failed.iterator();
+                while (it.hasNext() && bytes.remaining() >= 8) {
+                    bytes.putLong(it.next());
+                }
+                bytes.flip();
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    while (bytes.hasRemaining()) {
+                        channel.write(bytes);
+                    }
+                    channel.force(false);
+                }
+                failedLog.close();
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                failedLog = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                log.warn("Could not rewrite ingest journal failed log: {}", e.getMessage());
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface RecordVisitor {
+
+        boolean visit(JournalRecord record);
+    }
+
+    public record JournalRecord(long sequence, long receivedAt, String topic, byte[] payload, long endOffset) {}
+
+    public static final class Segment {
+
+        private final Path path;
+        private final long firstSequence;
+        private final long firstReceivedAt;
+        private volatile long size;
+
+        private Segment(Path path, long firstSequence, long firstReceivedAt) {
+            this.path = path;
+            this.firstSequence = firstSequence;
+            this.firstReceivedAt = firstReceivedAt;
+        }
+
+        private static Segment parse(Path path) throws IOException {
+            String name = path.getFileName().toString();
+            String[] parts = name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()).split("-");
+            if (parts.length != 2) {
+                return null;
+            }
+            try {
+                Segment segment = new Segment(path, Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+                segment.size = Files.size(path);
+                return segment;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        public Path path() {
+            return path;
+        }
+
+        public long firstSequence() {
+            return firstSequence;
+        }
+
+        public long firstReceivedAt() {
+            return firstReceivedAt;
+        }
+
+        public long size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.foodchain.device.service;
+
+public enum IngestOverflowPolicy {
+    /** Block the MQTT callback thread until the partition has room. */
+    BLOCK,
+    /** Evict the oldest queued message of the partition. */
+    DROP_OLDEST,
+    /** Drop telemetry first; other messages evict queued telemetry or block. */
+    SHED_TELEMETRY
+}
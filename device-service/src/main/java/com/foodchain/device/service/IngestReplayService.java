@@ -0,0 +1,109 @@
+package com.foodchain.device.service;
+
+import com.foodchain.common.dto.mqtt.IngestJournalStatusDto;
+import com.foodchain.common.dto.mqtt.IngestReplayResultDto;
+import com.foodchain.common.exception.BadRequestException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@Service
+public class IngestReplayService {
+
+    private static final Logger log = LoggerFactory.getLogger(IngestReplayService.class);
+
+    private final IngestJournal ingestJournal;
+    private final MqttService mqttService;
+
+    @Value("${app.mqtt.journal.replay-limit}")
+    private int maxReplay;
+
+    public IngestReplayService(IngestJournal ingestJournal, MqttService mqttService) {
+        this.ingestJournal = ingestJournal;
+        this.mqttService = mqttService;
+    }
+
+    public IngestJournalStatusDto getStatus() {
+        List<IngestJournal.Segment> segments = ingestJournal.segments();
+        return new IngestJournalStatusDto(
+                ingestJournal.isEnabled(),
+                ingestJournal.lastSequence(),
+                segments.size(),
+                segments.stream().mapToLong(IngestJournal.Segment::size).sum(),
+                segments.isEmpty() ? null : segments.get(0).firstReceivedAt(),
+                ingestJournal.failedCount()
+        );
+    }
+
+    public IngestReplayResultDto replayRange(long from, long to, Integer limit) {
+        requireEnabled();
+        if (from >= to) {
+            throw new BadRequestException("'from' must be before 'to'");
+        }
+        Counts counts = new Counts();
+        try {
+            ingestJournal.read(from, to, effectiveLimit(limit), record -> {
+                counts.record(mqttService.replay(record.topic(), record.payload(), record.sequence()));
+                return true;
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read ingest journal", e);
+        }
+        log.info("Replayed journal range [{}, {}): {} scanned, {} failed", from, to, counts.scanned, counts.failed);
+        return counts.toDto();
+    }
+
+    public IngestReplayResultDto replayFailed(Integer limit) {
+        requireEnabled();
+        Counts counts = new Counts();
+        try {
+            ingestJournal.readFailed(effectiveLimit(limit), record -> {
+                boolean replayed = mqttService.replay(record.topic(), record.payload(), record.sequence());
+                counts.record(replayed);
+                return replayed;
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read ingest journal", e);
+        }
+        log.info("Replayed failed journal messages: {} scanned, {} still failing", counts.scanned, counts.failed);
+        return counts.toDto();
+    }
+
+    private int effectiveLimit(Integer limit) {
+        return limit != null && limit > 0 ? Math.min(limit, maxReplay) : maxReplay;
+    }
+
+    private void requireEnabled() {
+        if (!ingestJournal.isEnabled()) {
+            throw new BadRequestException("Ingest journal is disabled");
+        }
+    }
+
+    private static final class Counts {
+
+        private final long started = System.nanoTime();
+        private long scanned;
+        private long replayed;
+        private long failed;
+
+        private void record(boolean success) {
+            scanned++;
+            if (success) {
+                replayed++;
+            } else {
+                failed++;
+            }
+        }
+
+        private IngestReplayResultDto toDto() {
+            return new IngestReplayResultDto(scanned, replayed, failed,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        }
+    }
+}
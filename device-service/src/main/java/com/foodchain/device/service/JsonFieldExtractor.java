@@ -0,0 +1,158 @@
+package com.foodchain.device.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Reads a declared set of top-level scalar fields straight from a JSON (or CBOR, see
+ * {@link PayloadCodec}) byte payload with Jackson's streaming parser, stopping as soon
+ * as every field has been seen.
+ */
+@Component
+public class JsonFieldExtractor {
+
+    private final PayloadCodec payloadCodec;
+
+    public JsonFieldExtractor(PayloadCodec payloadCodec) {
+        this.payloadCodec = payloadCodec;
+    }
+
+    public static FieldSet fields(String... names) {
+        return new FieldSet(names);
+    }
+
+    public Fields extract(byte[] payload, FieldSet fieldSet) throws IOException {
+        Object[] values = new Object[fieldSet.names.length];
+        int remaining = values.length;
+
+        try (JsonParser parser = payloadCodec.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return new Fields(fieldSet, values);
+            }
+            while (remaining > 0 && parser.nextToken() == JsonToken.FIELD_NAME) {
+                int index = fieldSet.indexOf(parser.currentName());
+                JsonToken token = parser.nextToken();
+                Object value = index >= 0 && values[index] == null ? scalarValue(parser, token) : null;
+                if (value != null) {
+                    values[index] = value;
+                    remaining--;
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return new Fields(fieldSet, values);
+    }
+
+    /**
+     * Passes every top-level numeric field of a JSON object payload to {@code visitor};
+     * nested objects and arrays are skipped.
+     */
+    public void readNumbers(byte[] payload, NumberVisitor visitor) throws IOException {
+        try (JsonParser parser = payloadCodec.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken token = parser.nextToken();
+                if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+                    visitor.accept(name, parser.getDoubleValue());
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    private static Object scalarValue(JsonParser parser, JsonToken token) throws IOException {
+        return switch (token) {
+            case VALUE_TRUE -> Boolean.TRUE;
+            case VALUE_FALSE -> Boolean.FALSE;
+            case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> parser.getDoubleValue();
+            case VALUE_STRING -> parser.getText();
+            default -> null;
+        };
+    }
+
+    @FunctionalInterface
+    public interface NumberVisitor {
+
+        void accept(String name, double value);
+    }
+
+    public static final class FieldSet {
+
+        private final String[] names;
+
+        private FieldSet(String[] names) {
+            this.names = names.clone();
+        }
+
+        int indexOf(String name) {
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equals(name)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    public static final class Fields {
+
+        private final FieldSet fieldSet;
+        private final Object[] values;
+
+        private Fields(FieldSet fieldSet, Object[] values) {
+            this.fieldSet = fieldSet;
+            this.values = values;
+        }
+
+        public boolean has(String name) {
+            return value(name) != null;
+        }
+
+        public boolean getBoolean(String name) {
+            Object value = value(name);
+            if (value instanceof Boolean b) {
+                return b;
+            }
+            if (value instanceof Double d) {
+                return d != 0;
+            }
+            return value instanceof String s && "true".equalsIgnoreCase(s.trim());
+        }
+
+        public Double getDouble(String name) {
+            Object value = value(name);
+            if (value instanceof Double d) {
+                return d;
+            }
+            if (value instanceof String s) {
+                try {
+                    return Double.valueOf(s.trim());
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+            return null;
+        }
+
+        public String getString(String name) {
+            Object value = value(name);
+            return value != null ? value.toString() : null;
+        }
+
+        private Object value(String name) {
+            int index = fieldSet.indexOf(name);
+            if (index < 0) {
+                throw new IllegalArgumentException("Field not declared in field set: " + name);
+            }
+            return values[index];
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package com.foodchain.device.service;
+
+import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
+import org.eclipse.paho.client.mqttv3.MqttPersistable;
+import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Paho persistence backed by an append-only, memory-mapped segment file. Every put and
+ * remove is appended as a CRC-protected record and served from an in-memory map; on
+ * open the newest segment is replayed to rebuild that map. When a segment fills up,
+ * the live entries are rewritten into a fresh segment and the old one is deleted.
+ *
+ * <p>Writes land in the page cache, so they survive a process or pod restart. With
+ * {@code sync} enabled every write is also forced to disk.
+ */
+public class MappedSegmentPersistence implements MqttClientPersistence {
+
+    private static final Logger log = LoggerFactory.getLogger(MappedSegmentPersistence.class);
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final int RECORD_OVERHEAD = 4 + 1 + 2 + 4 + 4 + 4;
+
+    private final Path baseDirectory;
+    private final int initialSegmentSize;
+    private final boolean sync;
+    private final Map<String, StoredMessage> entries = new LinkedHashMap<>();
+    private final CRC32 crc = new CRC32();
+
+    private Path directory;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long segmentIndex;
+    private int segmentSize;
+
+    public MappedSegmentPersistence(Path baseDirectory, int segmentSize, boolean sync) {
+        this.baseDirectory = baseDirectory;
+        this.initialSegmentSize = segmentSize;
+        this.sync = sync;
+    }
+
+    @Override
+    public synchronized void open(String clientId, String serverURI) throws MqttPersistenceException {
+        directory = baseDirectory.resolve(sanitize(clientId) + "-" + sanitize(serverURI));
+        segmentSize = initialSegmentSize;
+        entries.clear();
+        try {
+            Files.createDirectories(directory);
+            Path latest = null;
+            segmentIndex = 0;
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*")) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    if (name.endsWith(TEMP_SUFFIX)) {
+                        Files.deleteIfExists(file);
+                        continue;
+                    }
+                    long index = parseIndex(name);
+                    if (index >= segmentIndex) {
+                        if (latest != null) {
+                            Files.deleteIfExists(latest);
+                        }
+                        segmentIndex = index;
+                        latest = file;
+                    } else if (index >= 0) {
+                        Files.deleteIfExists(file);
+                    }
+                }
+            }
+
+            if (latest != null) {
+                segmentSize = Math.max(segmentSize, (int) Files.size(latest));
+                mapSegment(latest);
+                replay();
+                log.info("Restored {} in-flight MQTT messages from {}", entries.size(), latest);
+            } else {
+                mapSegment(segmentPath(segmentIndex, SEGMENT_SUFFIX));
+            }
+        } catch (IOException e) {
+            throw persistenceException(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws MqttPersistenceException {
+        if (channel == null) {
+            return;
+        }
+        try {
+            buffer.force();
+            channel.close();
+        } catch (IOException e) {
+            throw persistenceException(e);
+        } finally {
+            channel = null;
+            buffer = null;
+            entries.clear();
+        }
+    }
+
+    @Override
+    public synchronized void put(String key, MqttPersistable persistable) throws MqttPersistenceException {
+        checkOpen();
+        StoredMessage message = StoredMessage.copyOf(persistable);
+        append(OP_PUT, key, message);
+        entries.put(key, message);
+    }
+
+    @Override
+    public synchronized MqttPersistable get(String key) throws MqttPersistenceException {
+        checkOpen();
+        return entries.get(key);
+    }
+
+    @Override
+    public synchronized void remove(String key) throws MqttPersistenceException {
+        checkOpen();
+        if (entries.remove(key) != null) {
+            append(OP_REMOVE, key, null);
+        }
+    }
+
+    @Override
+    public synchronized Enumeration<String> keys() throws MqttPersistenceException {
+        checkOpen();
+        return Collections.enumeration(entries.keySet().stream().toList());
+    }
+
+    @Override
+    public synchronized void clear() throws MqttPersistenceException {
+        checkOpen();
+        entries.clear();
+        compact(0);
+    }
+
+    @Override
+    public synchronized boolean containsKey(String key) throws MqttPersistenceException {
+        checkOpen();
+        return entries.containsKey(key);
+    }
+
+    private void append(byte op, String key, StoredMessage message) throws MqttPersistenceException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int size = recordSize(keyBytes, message);
+        if (buffer.remaining() < size) {
+            compact(size);
+        }
+        writeRecord(buffer, op, keyBytes, message);
+        if (sync) {
+            buffer.force();
+        }
+    }
+
+    /**
+     * Rewrites the live entries into the next segment, leaving at least {@code reserve}
+     * free bytes, then deletes the current one. The new segment is written under a
+     * temporary name and renamed only once it is complete.
+     */
+    private void compact(int reserve) throws MqttPersistenceException {
+        Map<String, byte[]> keys = new LinkedHashMap<>();
+        long live = reserve;
+        for (Map.Entry<String, StoredMessage> entry : entries.entrySet()) {
+            byte[] keyBytes = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            keys.put(entry.getKey(), keyBytes);
+            live += recordSize(keyBytes, entry.getValue());
+        }
+        while (live > segmentSize / 2 && segmentSize < Integer.MAX_VALUE / 2) {
+            segmentSize *= 2;
+        }
+
+        Path previous = segmentPath(segmentIndex, SEGMENT_SUFFIX);
+        long nextIndex = segmentIndex + 1;
+        Path temp = segmentPath(nextIndex, TEMP_SUFFIX);
+        int written;
+        try {
+            channel.close();
+            try (FileChannel next = FileChannel.open(temp,
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer nextBuffer = next.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+                for (Map.Entry<String, StoredMessage> entry : entries.entrySet()) {
+                    writeRecord(nextBuffer, OP_PUT, keys.get(entry.getKey()), entry.getValue());
+                }
+                nextBuffer.force();
+                written = nextBuffer.position();
+            }
+            Path target = segmentPath(nextIndex, SEGMENT_SUFFIX);
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            Files.deleteIfExists(previous);
+            segmentIndex = nextIndex;
+            mapSegment(target);
+            buffer.position(written);
+        } catch (IOException e) {
+            throw persistenceException(e);
+        }
+        log.debug("Compacted MQTT persistence to {} live entries in segment {}", entries.size(), segmentIndex);
+    }
+
+    private void mapSegment(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+    }
+
+    private void replay() {
+        buffer.position(0);
+        while (buffer.remaining() >= 4) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining()) {
+                buffer.position(start);
+                return;
+            }
+            byte[] body = new byte[length - 4];
+            buffer.get(body);
+            int checksum = buffer.getInt();
+            crc.reset();
+            crc.update(body);
+            if ((int) crc.getValue() != checksum) {
+                log.warn("Discarding torn MQTT persistence record at offset {} in segment {}", start, segmentIndex);
+                buffer.position(start);
+                return;
+            }
+            applyRecord(body);
+        }
+    }
+
+    private void applyRecord(byte[] body) {
+        ByteBuffer record = ByteBuffer.wrap(body);
+        byte op = record.get();
+        byte[] keyBytes = new byte[record.getShort() & 0xFFFF];
+        record.get(keyBytes);
+        String key = new String(keyBytes, StandardCharsets.UTF_8);
+        if (op == OP_REMOVE) {
+            entries.remove(key);
+            return;
+        }
+        byte[] header = new byte[record.getInt()];
+        record.get(header);
+        byte[] payload = new byte[record.getInt()];
+        record.get(payload);
+        entries.put(key, new StoredMessage(header, payload));
+    }
+
+    private void writeRecord(MappedByteBuffer target, byte op, byte[] keyBytes, StoredMessage message) {
+        int start = target.position();
+        target.putInt(recordSize(keyBytes, message) - 4);
+        target.put(op);
+        target.putShort((short) keyBytes.length);
+        target.put(keyBytes);
+        byte[] header = message != null ? message.header : new byte[0];
+        byte[] payload = message != null ? message.payload : new byte[0];
+        target.putInt(header.length);
+        target.put(header);
+        target.putInt(payload.length);
+        target.put(payload);
+
+        crc.reset();
+        crc.update(target.slice(start + 4, target.position() - start - 4));
+        target.putInt((int) crc.getValue());
+    }
+
+    private static int recordSize(byte[] keyBytes, StoredMessage message) {
+        int size = RECORD_OVERHEAD + keyBytes.length;
+        if (message != null) {
+            size += message.header.length + message.payload.length;
+        }
+        return size;
+    }
+
+    private Path segmentPath(long index, String suffix) {
+        return directory.resolve(SEGMENT_PREFIX + String.format("%019d", index) + suffix);
+    }
+
+    private void checkOpen() throws MqttPersistenceException {
+        if (channel == null) {
+            throw new MqttPersistenceException();
+        }
+    }
+
+    private static long parseIndex(String fileName) {
+        if (!fileName.endsWith(SEGMENT_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(fileName.substring(SEGMENT_PREFIX.length(), fileName.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String sanitize(String value) {
+        StringBuilder result = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            result.append(Character.isLetterOrDigit(c) || c == '-' || c == '.' ? c : '_');
+        }
+        return result.toString();
+    }
+
+    private static MqttPersistenceException persistenceException(IOException e) {
+        return new MqttPersistenceException(e);
+    }
+
+    private static final class StoredMessage implements MqttPersistable {
+
+        private final byte[] header;
+        private final byte[] payload;
+
+        private StoredMessage(byte[] header, byte[] payload) {
+            this.header = header;
+            this.payload = payload;
+        }
+
+        private static StoredMessage copyOf(MqttPersistable persistable) throws MqttPersistenceException {
+            return new StoredMessage(
+                    copy(persistable.getHeaderBytes(), persistable.getHeaderOffset(), persistable.getHeaderLength()),
+                    copy(persistable.getPayloadBytes(), persistable.getPayloadOffset(), persistable.getPayloadLength()));
+        }
+
+        private static byte[] copy(byte[] bytes, int offset, int length) {
+            if (bytes == null || length == 0) {
+                return new byte[0];
+            }
+            byte[] copy = new byte[length];
+            System.arraycopy(bytes, offset, copy, 0, length);
+            return copy;
+        }
+
+        @Override
+        public byte[] getHeaderBytes() {
+            return header;
+        }
+
+        @Override
+        public int getHeaderLength() {
+            return header.length;
+        }
+
+        @Override
+        public int getHeaderOffset() {
+            return 0;
+        }
+
+        @Override
+        public byte[] getPayloadBytes() {
+            return payload;
+        }
+
+        @Override
+        public int getPayloadLength() {
+            return payload.length;
+        }
+
+        @Override
+        public int getPayloadOffset() {
+            return 0;
+        }
+    }
+}
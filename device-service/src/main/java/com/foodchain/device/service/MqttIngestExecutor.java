@@ -0,0 +1,202 @@
+package com.foodchain.device.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded hand-off between the MQTT callback thread and a fixed pool of workers.
+ * Messages are partitioned by device id so each device is always processed by the
+ * same worker, in arrival order. Every task that is discarded, whether it is the new task
+ * or one already queued that the overflow policy evicts, has its journal sequence marked
+ * failed so it can be replayed.
+ */
+@Component
+public class MqttIngestExecutor {
+
+    private static final Logger log = LoggerFactory.getLogger(MqttIngestExecutor.class);
+
+    private final IngestJournal ingestJournal;
+    private final IngestOverflowPolicy overflowPolicy;
+    private final long drainTimeoutMs;
+    private final List<ArrayBlockingQueue<IngestTask>> partitions;
+    private final List<Thread> workers;
+    private final Counter droppedOldest;
+    private final Counter shedTelemetry;
+    private final Counter rejected;
+
+    private volatile boolean running = true;
+
+    public MqttIngestExecutor(@Value("${app.mqtt.ingest.workers}") int workerCount,
+                              @Value("${app.mqtt.ingest.queue-capacity}") int queueCapacity,
+                              @Value("${app.mqtt.ingest.overflow-policy}") IngestOverflowPolicy overflowPolicy,
+                              @Value("${app.mqtt.ingest.drain-timeout-ms}") long drainTimeoutMs,
+                              IngestJournal ingestJournal,
+                              MeterRegistry meterRegistry) {
+        int count = workerCount > 0 ? workerCount : Runtime.getRuntime().availableProcessors();
+        this.ingestJournal = ingestJournal;
+        this.overflowPolicy = overflowPolicy;
+        this.drainTimeoutMs = drainTimeoutMs;
+        this.partitions = new ArrayList<>(count);
+        this.workers = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            ArrayBlockingQueue<IngestTask> queue = new ArrayBlockingQueue<>(queueCapacity);
+            partitions.add(queue);
+            Gauge.builder("mqtt.ingest.queue.depth", queue, ArrayBlockingQueue::size)
+                    .tag("partition", String.valueOf(i))
+                    .register(meterRegistry);
+
+            Thread worker = new Thread(() -> runWorker(queue), "mqtt-ingest-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+        }
+
+        this.droppedOldest = Counter.builder("mqtt.ingest.dropped").tag("reason", "drop_oldest").register(meterRegistry);
+        this.shedTelemetry = Counter.builder("mqtt.ingest.dropped").tag("reason", "shed_telemetry").register(meterRegistry);
+        this.rejected = Counter.builder("mqtt.ingest.dropped").tag("reason", "rejected").register(meterRegistry);
+
+        workers.forEach(Thread::start);
+        log.info("MQTT ingest started with {} workers, queue capacity {} per worker, overflow policy {}",
+                count, queueCapacity, overflowPolicy);
+    }
+
+    /**
+     * Queues a task on the partition owning {@code partitionKey}. Returns {@code false}
+     * if the task was dropped by the overflow policy, in which case its
+     * {@code journalSequence} has already been marked failed.
+     */
+    public boolean submit(String partitionKey, boolean sheddable, long journalSequence, Runnable task) {
+        IngestTask ingestTask = new IngestTask(task, sheddable, journalSequence);
+        if (!running) {
+            drop(ingestTask, rejected);
+            return false;
+        }
+
+        ArrayBlockingQueue<IngestTask> queue = partitions.get(Math.floorMod(partitionKey.hashCode(), partitions.size()));
+        if (queue.offer(ingestTask)) {
+            return true;
+        }
+
+        return switch (overflowPolicy) {
+            case BLOCK -> put(queue, ingestTask);
+            case DROP_OLDEST -> {
+                while (!queue.offer(ingestTask)) {
+                    IngestTask oldest = queue.poll();
+                    if (oldest != null) {
+                        drop(oldest, droppedOldest);
+                    }
+                }
+                yield true;
+            }
+            case SHED_TELEMETRY -> {
+                if (sheddable) {
+                    drop(ingestTask, shedTelemetry);
+                    yield false;
+                }
+                if (evictSheddable(queue) && queue.offer(ingestTask)) {
+                    yield true;
+                }
+                yield put(queue, ingestTask);
+            }
+        };
+    }
+
+    public int queueDepth() {
+        int depth = 0;
+        for (ArrayBlockingQueue<IngestTask> queue : partitions) {
+            depth += queue.size();
+        }
+        return depth;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(drainTimeoutMs);
+        for (Thread worker : workers) {
+            long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            try {
+                if (remainingMs > 0) {
+                    worker.join(remainingMs);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        int remaining = 0;
+        for (ArrayBlockingQueue<IngestTask> queue : partitions) {
+            IngestTask task;
+            while ((task = queue.poll()) != null) {
+                ingestJournal.markFailed(task.journalSequence());
+                remaining++;
+            }
+        }
+        if (remaining > 0) {
+            log.warn("MQTT ingest stopped with {} unprocessed messages, marked failed in the journal", remaining);
+        }
+    }
+
+    private boolean put(ArrayBlockingQueue<IngestTask> queue, IngestTask task) {
+        try {
+            queue.put(task);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            drop(task, rejected);
+            return false;
+        }
+    }
+
+    private void drop(IngestTask task, Counter reason) {
+        reason.increment();
+        ingestJournal.markFailed(task.journalSequence());
+    }
+
+    private boolean evictSheddable(ArrayBlockingQueue<IngestTask> queue) {
+        Iterator<IngestTask> it = queue.iterator();
+        while (it.hasNext()) {
+            IngestTask task = it.next();
+            if (task.sheddable()) {
+                it.remove();
+                drop(task, shedTelemetry);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void runWorker(ArrayBlockingQueue<IngestTask> queue) {
+        while (running || !queue.isEmpty()) {
+            IngestTask task;
+            try {
+                task = queue.poll(200, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (task == null) {
+                continue;
+            }
+            try {
+                task.task().run();
+            } catch (Exception e) {
+                log.error("Unhandled error in MQTT ingest worker", e);
+            }
+        }
+    }
+
+    private record IngestTask(Runnable task, boolean sheddable, long journalSequence) {}
+}
@@ -0,0 +1,14 @@
+package com.foodchain.device.service;
+
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+
+@FunctionalInterface
+public interface MqttMessageHandler {
+
+    /**
+     * Handles one routed message. {@code sequence} is the message's ingest journal
+     * sequence, or {@code -1} when it was not journaled; handlers that hand work to a
+     * background writer pass it along so a later drop can still be marked failed.
+     */
+    void handle(String deviceId, MqttMessage message, long sequence) throws Exception;
+}
@@ -0,0 +1,211 @@
+package com.foodchain.device.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Pipelined MQTT publisher. Callers get a future immediately; a single sender thread
+ * drains a bounded queue into the async client while at most {@code max-in-flight}
+ * publishes await their broker acknowledgement. Queued messages wait out short
+ * disconnects and fail once they are older than {@code queue-ttl-ms}.
+ */
+@Service
+public class MqttPublisher {
+
+    private static final Logger log = LoggerFactory.getLogger(MqttPublisher.class);
+
+    private final MqttAsyncClient mqttClient;
+    private final LinkedBlockingDeque<PendingPublish> queue;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private final long queueTtlNanos;
+    private final Thread sender;
+    private final Timer latency;
+    private final Counter rejected;
+    private final Counter expired;
+    private final Counter failed;
+
+    @Value("${app.mqtt.qos}")
+    private int qos;
+
+    private volatile boolean running = true;
+
+    public MqttPublisher(MqttAsyncClient mqttClient,
+                         @Value("${app.mqtt.publish.max-in-flight}") int maxInFlight,
+                         @Value("${app.mqtt.publish.queue-capacity}") int queueCapacity,
+                         @Value("${app.mqtt.publish.queue-ttl-ms}") long queueTtlMs,
+                         MeterRegistry meterRegistry) {
+        this.mqttClient = mqttClient;
+        this.queue = new LinkedBlockingDeque<>(queueCapacity);
+        this.inFlight = new Semaphore(maxInFlight);
+        this.maxInFlight = maxInFlight;
+        this.queueTtlNanos = TimeUnit.MILLISECONDS.toNanos(queueTtlMs);
+
+        Gauge.builder("mqtt.publish.queue.depth", queue, LinkedBlockingDeque::size).register(meterRegistry);
+        Gauge.builder("mqtt.publish.in.flight", inFlight, s -> maxInFlight - s.availablePermits()).register(meterRegistry);
+        this.latency = Timer.builder("mqtt.publish.latency").register(meterRegistry);
+        this.rejected = Counter.builder("mqtt.publish.failed").tag("reason", "queue_full").register(meterRegistry);
+        this.expired = Counter.builder("mqtt.publish.failed").tag("reason", "expired").register(meterRegistry);
+        this.failed = Counter.builder("mqtt.publish.failed").tag("reason", "error").register(meterRegistry);
+
+        this.sender = new Thread(this::runSender, "mqtt-publisher");
+        this.sender.setDaemon(true);
+        this.sender.start();
+    }
+
+    public CompletableFuture<Void> publish(String topic, byte[] payload) {
+        return publish(topic, payload, qos);
+    }
+
+    public CompletableFuture<Void> publish(String topic, byte[] payload, int messageQos) {
+        PendingPublish pending = new PendingPublish(topic, payload, messageQos, System.nanoTime());
+        if (!running || !queue.offerLast(pending)) {
+            rejected.increment();
+            pending.future.completeExceptionally(new RejectedExecutionException("MQTT publish queue is full"));
+        }
+        return pending.future;
+    }
+
+    public int queueDepth() {
+        return queue.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            sender.join(TimeUnit.SECONDS.toMillis(5));
+            inFlight.tryAcquire(maxInFlight, 5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        PendingPublish pending;
+        while ((pending = queue.pollFirst()) != null) {
+            pending.future.completeExceptionally(new RejectedExecutionException("MQTT publisher stopped"));
+        }
+    }
+
+    private void runSender() {
+        PendingPublish next = null;
+        while (running || (next != null || !queue.isEmpty()) && mqttClient.isConnected()) {
+            try {
+                if (next == null) {
+                    next = queue.pollFirst(200, TimeUnit.MILLISECONDS);
+                    if (next == null) {
+                        continue;
+                    }
+                }
+                if (System.nanoTime() - next.enqueuedAt > queueTtlNanos) {
+                    expired.increment();
+                    next.future.completeExceptionally(new TimeoutException("MQTT publish to " + next.topic + " expired in queue"));
+                    next = null;
+                    continue;
+                }
+                if (!mqttClient.isConnected()) {
+                    Thread.sleep(100);
+                    continue;
+                }
+
+                inFlight.acquire();
+                if (send(next)) {
+                    next = null;
+                } else {
+                    Thread.sleep(50);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        if (next != null) {
+            next.future.completeExceptionally(new RejectedExecutionException("MQTT publisher stopped"));
+        }
+    }
+
+    /**
+     * Hands the message to the client. Returns {@code false} if it should be retried
+     * because the client is disconnected or its in-flight window is full.
+     */
+    private boolean send(PendingPublish pending) {
+        MqttMessage message = new MqttMessage(pending.payload);
+        message.setQos(pending.qos);
+        try {
+            mqttClient.publish(pending.topic, message, null, new IMqttActionListener() {
+                @Override
+                public void onSuccess(IMqttToken token) {
+                    inFlight.release();
+                    latency.record(System.nanoTime() - pending.enqueuedAt, TimeUnit.NANOSECONDS);
+                    pending.future.complete(null);
+                }
+
+                @Override
+                public void onFailure(IMqttToken token, Throwable cause) {
+                    inFlight.release();
+                    if (isConnectionLoss(cause) && running && queue.offerFirst(pending)) {
+                        return;
+                    }
+                    failed.increment();
+                    pending.future.completeExceptionally(cause);
+                }
+            });
+            return true;
+        } catch (MqttException e) {
+            inFlight.release();
+            if (isConnectionLoss(e) || e.getReasonCode() == MqttException.REASON_CODE_MAX_INFLIGHT) {
+                return false;
+            }
+            failed.increment();
+            log.error("Error publishing MQTT message to {}", pending.topic, e);
+            pending.future.completeExceptionally(e);
+            return true;
+        }
+    }
+
+    private static boolean isConnectionLoss(Throwable cause) {
+        if (!(cause instanceof MqttException e)) {
+            return false;
+        }
+        int reason = e.getReasonCode();
+        return reason == MqttException.REASON_CODE_CLIENT_NOT_CONNECTED
+                || reason == MqttException.REASON_CODE_CONNECTION_LOST
+                || reason == MqttException.REASON_CODE_CLIENT_DISCONNECTING;
+    }
+
+    private static final class PendingPublish {
+
+        private final String topic;
+        private final byte[] payload;
+        private final int qos;
+        private final long enqueuedAt;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private PendingPublish(String topic, byte[] payload, int qos, long enqueuedAt) {
+            this.topic = topic;
+            this.payload = payload;
+            this.qos = qos;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
@@ -1,52 +1,102 @@
 package com.foodchain.device.service;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.foodchain.device.repository.DeviceRepository;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import org.eclipse.paho.client.mqttv3.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class MqttService implements MqttCallbackExtended {
 
     private static final Logger log = LoggerFactory.getLogger(MqttService.class);
 
-    private final MqttClient mqttClient;
-    private final DeviceRepository deviceRepository;
+    private static final long DISCONNECT_TIMEOUT_MS = 5000;
+    /**
+     * Message types every replica must see even when the stream is split with a shared
+     * subscription: each replica keeps its own presence table and pending commands.
+     */
+    private static final Set<String> PER_INSTANCE_TYPES = Set.of("status", "heartbeat", "ack");
+    private static final JsonFieldExtractor.FieldSet STATUS_FIELDS = JsonFieldExtractor.fields("is_online");
+
+    private final MqttAsyncClient mqttClient;
+    private final MqttPublisher mqttPublisher;
+    private final DevicePresenceTracker presenceTracker;
     private final WebSocketNotificationService webSocketService;
-    private final ObjectMapper objectMapper;
+    private final JsonFieldExtractor jsonFieldExtractor;
+    private final MqttIngestExecutor ingestExecutor;
+    private final MqttTopicRouter topicRouter;
+    private final TelemetryService telemetryService;
+    private final IngestJournal ingestJournal;
 
     @Value("${app.mqtt.qos}")
     private int qos;
 
-    public MqttService(MqttClient mqttClient,
-                       DeviceRepository deviceRepository,
+    @Value("${app.mqtt.shared-subscription.enabled}")
+    private boolean sharedSubscription;
+
+    @Value("${app.mqtt.shared-subscription.group}")
+    private String sharedGroup;
+
+    public MqttService(MqttAsyncClient mqttClient,
+                       MqttPublisher mqttPublisher,
+                       DevicePresenceTracker presenceTracker,
                        WebSocketNotificationService webSocketService,
-                       ObjectMapper objectMapper) {
+                       JsonFieldExtractor jsonFieldExtractor,
+                       MqttIngestExecutor ingestExecutor,
+                       MqttTopicRouter topicRouter,
+                       TelemetryService telemetryService,
+                       IngestJournal ingestJournal) {
         this.mqttClient = mqttClient;
-        this.deviceRepository = deviceRepository;
+        this.mqttPublisher = mqttPublisher;
+        this.presenceTracker = presenceTracker;
         this.webSocketService = webSocketService;
-        this.objectMapper = objectMapper;
+        this.jsonFieldExtractor = jsonFieldExtractor;
+        this.ingestExecutor = ingestExecutor;
+        this.topicRouter = topicRouter;
+        this.telemetryService = telemetryService;
+        this.ingestJournal = ingestJournal;
     }
 
     @PostConstruct
     public void init() {
+        topicRouter.register("status", this::handleStatusMessage);
+        topicRouter.register("control", (deviceId, message, sequence) ->
+                webSocketService.sendDeviceControl(deviceId, message.getPayload()));
+        topicRouter.register("telemetry", true, this::handleTelemetryMessage);
+        topicRouter.register("heartbeat", (deviceId, message, sequence) -> {
+            UUID id = parseDeviceId(deviceId);
+            if (id != null) {
+                presenceTracker.heartbeat(id);
+            }
+        });
+
         mqttClient.setCallback(this);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void subscribeOnStartup() {
         subscribeToTopics();
     }
 
     @PreDestroy
     public void cleanup() {
+        mqttPublisher.shutdown();
         try {
             if (mqttClient.isConnected()) {
-                mqttClient.disconnect();
+                mqttClient.disconnect().waitForCompletion(DISCONNECT_TIMEOUT_MS);
                 log.info("Disconnected from MQTT broker");
             }
         } catch (MqttException e) {
@@ -57,25 +107,32 @@ public class MqttService implements MqttCallbackExtended {
     private void subscribeToTopics() {
         try {
             if (mqttClient.isConnected()) {
-                mqttClient.subscribe("devices/#", qos);
-                log.info("Subscribed to devices/#");
+                String[] topicFilters = topicFilters();
+                int[] qosLevels = new int[topicFilters.length];
+                Arrays.fill(qosLevels, qos);
+                mqttClient.subscribe(topicFilters, qosLevels);
+                log.info("Subscribed to {}", Arrays.toString(topicFilters));
             }
         } catch (MqttException e) {
             log.error("Error subscribing to MQTT topics", e);
         }
     }
 
-    public void publish(String topic, String payload) {
-        try {
-            if (mqttClient.isConnected()) {
-                MqttMessage message = new MqttMessage(payload.getBytes());
-                message.setQos(qos);
-                mqttClient.publish(topic, message);
-                log.debug("Published to {}: {}", topic, payload);
-            }
-        } catch (MqttException e) {
-            log.error("Error publishing MQTT message to {}", topic, e);
+    private String[] topicFilters() {
+        if (!sharedSubscription) {
+            return new String[]{"devices/#"};
         }
+        List<String> filters = new ArrayList<>();
+        for (String messageType : topicRouter.messageTypes()) {
+            String filter = "devices/+/" + messageType + "/#";
+            filters.add(PER_INSTANCE_TYPES.contains(messageType) ? filter : "$share/" + sharedGroup + "/" + filter);
+        }
+        return filters.toArray(new String[0]);
+    }
+
+    public CompletableFuture<Void> publish(String topic, String payload) {
+        log.debug("Publishing to {}: {}", topic, payload);
+        return mqttPublisher.publish(topic, payload.getBytes(StandardCharsets.UTF_8));
     }
 
     @Override
@@ -91,27 +148,79 @@ public class MqttService implements MqttCallbackExtended {
 
     @Override
     public void messageArrived(String topic, MqttMessage message) {
-        String payload = new String(message.getPayload());
-        log.debug("MQTT message received on {}: {}", topic, payload);
+        MqttTopicRouter.Match match = topicRouter.resolve(topic);
+        if (match == null) {
+            log.debug("Ignoring MQTT message on unrouted topic {}", topic);
+            return;
+        }
+        long sequence = ingestJournal.append(topic, message.getPayload(), System.currentTimeMillis());
+        ingestExecutor.submit(match.deviceId(), match.route().sheddable(), sequence,
+                () -> dispatch(topic, match, message, sequence));
+    }
 
+    /**
+     * Runs a journaled message through its handler on the calling thread. Presence is
+     * not updated, since the message is not evidence that the device is alive now.
+     * Status reports are not pushed again; their online flag is written to the database
+     * even if presence already matches it, because the earlier write is what failed.
+     * Returns {@code false} if the topic is not routed or the handler failed; a write
+     * that is dropped later marks {@code sequence} failed again.
+     * <p>
+     * Replay is not idempotent: telemetry rows are inserted again, so replaying a range
+     * that was already stored duplicates its points.
+     */
+    public boolean replay(String topic, byte[] payload, long sequence) {
+        MqttTopicRouter.Match match = topicRouter.resolve(topic);
+        if (match == null) {
+            return false;
+        }
+        if ("status".equals(match.route().messageType())) {
+            return replayStatus(topic, match.deviceId(), payload, sequence);
+        }
+        return handle(topic, match, new MqttMessage(payload), sequence);
+    }
+
+    private boolean replayStatus(String topic, String deviceId, byte[] payload, long sequence) {
         try {
-            String[] parts = topic.split("/");
-            if (parts.length >= 3 && "devices".equals(parts[0])) {
-                String deviceId = parts[1];
-                String messageType = parts[2];
-
-                switch (messageType) {
-                    case "status" -> handleStatusMessage(deviceId, payload);
-                    case "control" -> webSocketService.sendDeviceControl(deviceId, payload);
-                    case "telemetry" -> webSocketService.sendDeviceTelemetry(deviceId, payload);
-                }
-
-                if ("status".equals(messageType)) {
-                    webSocketService.sendDeviceStatus(deviceId, payload);
-                }
+            UUID id = parseDeviceId(deviceId);
+            if (id == null) {
+                return true;
+            }
+            JsonFieldExtractor.Fields fields = jsonFieldExtractor.extract(payload, STATUS_FIELDS);
+            if (fields.has("is_online")) {
+                presenceTracker.rewriteStatus(id, fields.getBoolean("is_online"), sequence);
             }
+            return true;
+        } catch (Exception e) {
+            log.error("Error replaying MQTT message from {}", topic, e);
+            return false;
+        }
+    }
+
+    private void dispatch(String topic, MqttTopicRouter.Match match, MqttMessage message, long sequence) {
+        if (log.isDebugEnabled()) {
+            log.debug("MQTT message received on {}: {}", topic, payloadAsString(message));
+        }
+
+        if (!"status".equals(match.route().messageType())) {
+            UUID id = parseDeviceIdQuietly(match.deviceId());
+            if (id != null) {
+                presenceTracker.touch(id);
+            }
+        }
+
+        if (!handle(topic, match, message, sequence)) {
+            ingestJournal.markFailed(sequence);
+        }
+    }
+
+    private boolean handle(String topic, MqttTopicRouter.Match match, MqttMessage message, long sequence) {
+        try {
+            match.route().handler().handle(match.deviceId(), message, sequence);
+            return true;
         } catch (Exception e) {
             log.error("Error processing MQTT message from {}", topic, e);
+            return false;
         }
     }
 
@@ -119,23 +228,62 @@ public class MqttService implements MqttCallbackExtended {
     public void deliveryComplete(IMqttDeliveryToken token) {
     }
 
-    private void handleStatusMessage(String deviceId, String payload) {
+    private void handleStatusMessage(String deviceId, MqttMessage message, long sequence) throws Exception {
+        updateOnlineStatus(deviceId, message.getPayload(), sequence);
+        webSocketService.sendDeviceStatus(deviceId, message.getPayload());
+    }
+
+    private void handleTelemetryMessage(String deviceId, MqttMessage message, long sequence) throws Exception {
+        recordTelemetry(deviceId, message.getPayload(), sequence);
+        webSocketService.sendDeviceTelemetry(deviceId, message.getPayload());
+    }
+
+    private void updateOnlineStatus(String deviceId, byte[] payload, long sequence) throws Exception {
+        UUID id = parseDeviceId(deviceId);
+        if (id == null) {
+            return;
+        }
+
+        JsonFieldExtractor.Fields fields = jsonFieldExtractor.extract(payload, STATUS_FIELDS);
+        if (fields.has("is_online")) {
+            presenceTracker.reportStatus(id, fields.getBoolean("is_online"), sequence);
+        } else {
+            presenceTracker.touch(id);
+        }
+    }
+
+    private void recordTelemetry(String deviceId, byte[] payload, long sequence) throws Exception {
+        UUID id = parseDeviceId(deviceId);
+        if (id == null) {
+            return;
+        }
+
+        long receivedAt = System.currentTimeMillis();
+        TelemetrySample sample = new TelemetrySample(receivedAt);
+        jsonFieldExtractor.readNumbers(payload, sample);
+        if (sample.size() > 0) {
+            telemetryService.record(id, sample, receivedAt, sequence);
+        }
+    }
+
+    private static UUID parseDeviceId(String deviceId) {
         try {
-            UUID id = UUID.fromString(deviceId);
-            deviceRepository.findById(id).ifPresent(device -> {
-                try {
-                    JsonNode node = objectMapper.readTree(payload);
-                    if (node.has("is_online")) {
-                        device.setOnline(node.get("is_online").asBoolean());
-                        deviceRepository.save(device);
-                        log.debug("Updated device {} online status to {}", deviceId, device.isOnline());
-                    }
-                } catch (Exception e) {
-                    log.error("Error parsing status payload for device {}", deviceId, e);
-                }
-            });
+            return UUID.fromString(deviceId);
         } catch (IllegalArgumentException e) {
             log.warn("Invalid device ID in MQTT topic: {}", deviceId);
+            return null;
         }
     }
+
+    private static UUID parseDeviceIdQuietly(String deviceId) {
+        try {
+            return UUID.fromString(deviceId);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String payloadAsString(MqttMessage message) {
+        return new String(message.getPayload(), StandardCharsets.UTF_8);
+    }
 }
@@ -0,0 +1,74 @@
+package com.foodchain.device.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Resolves {@code devices/{id}/{type}[/...]} topics to registered handlers with a
+ * single left-to-right scan. The only allocation on a match is the device id itself.
+ */
+@Component
+public class MqttTopicRouter {
+
+    private static final String PREFIX = "devices/";
+
+    private volatile Route[] routes = new Route[0];
+
+    public void register(String messageType, MqttMessageHandler handler) {
+        register(messageType, false, handler);
+    }
+
+    public synchronized void register(String messageType, boolean sheddable, MqttMessageHandler handler) {
+        if (messageType.isEmpty() || messageType.indexOf('/') >= 0
+                || messageType.indexOf('+') >= 0 || messageType.indexOf('#') >= 0) {
+            throw new IllegalArgumentException("Invalid MQTT message type: " + messageType);
+        }
+        for (Route route : routes) {
+            if (route.messageType().equals(messageType)) {
+                throw new IllegalStateException("Handler already registered for message type: " + messageType);
+            }
+        }
+        Route[] updated = Arrays.copyOf(routes, routes.length + 1);
+        updated[routes.length] = new Route(messageType, sheddable, handler);
+        routes = updated;
+    }
+
+    public List<String> messageTypes() {
+        return Arrays.stream(routes).map(Route::messageType).toList();
+    }
+
+    /**
+     * Returns the device id and route for {@code topic}, or {@code null} if it is not a
+     * device topic or its message type has no registered handler.
+     */
+    public Match resolve(String topic) {
+        if (!topic.startsWith(PREFIX)) {
+            return null;
+        }
+        int idStart = PREFIX.length();
+        int idEnd = topic.indexOf('/', idStart);
+        if (idEnd <= idStart) {
+            return null;
+        }
+        int typeStart = idEnd + 1;
+        int typeEnd = topic.indexOf('/', typeStart);
+        if (typeEnd < 0) {
+            typeEnd = topic.length();
+        }
+        int typeLength = typeEnd - typeStart;
+
+        for (Route route : routes) {
+            String messageType = route.messageType();
+            if (messageType.length() == typeLength && topic.regionMatches(typeStart, messageType, 0, typeLength)) {
+                return new Match(topic.substring(idStart, idEnd), route);
+            }
+        }
+        return null;
+    }
+
+    public record Route(String messageType, boolean sheddable, MqttMessageHandler handler) {}
+
+    public record Match(String deviceId, Route route) {}
+}
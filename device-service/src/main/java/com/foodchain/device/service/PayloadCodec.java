@@ -0,0 +1,79 @@
+package com.foodchain.device.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Device payloads are JSON by default; a device may instead publish CBOR. MQTT 3.1.1 has
+ * no content-type property, so the encoding is recognised from the first byte: a JSON
+ * document starts with {@code {}, {@code [} or whitespace, while a CBOR map, array or
+ * self-describe tag starts with a byte that can never begin a JSON document.
+ */
+@Component
+public class PayloadCodec {
+
+    public static final MimeType APPLICATION_CBOR = new MimeType("application", "cbor");
+
+    private final JsonFactory jsonFactory;
+    private final CBORFactory cborFactory = new CBORFactory();
+
+    public PayloadCodec(ObjectMapper objectMapper) {
+        this.jsonFactory = objectMapper.getFactory();
+    }
+
+    public static boolean isCbor(byte[] payload) {
+        if (payload.length == 0) {
+            return false;
+        }
+        int first = payload[0] & 0xFF;
+        // major type 4 (array), 5 (map) or 6 (tag, e.g. 0xD9D9F7 self-describe)
+        return first >= 0x80 && first <= 0xDB;
+    }
+
+    /**
+     * Returns {@code true} if the payload is a JSON object or array that can be embedded
+     * into another JSON document as-is.
+     */
+    public static boolean isJsonContainer(byte[] payload) {
+        for (byte b : payload) {
+            if (b == '{' || b == '[') {
+                return true;
+            }
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    public JsonParser createParser(byte[] payload) throws IOException {
+        return isCbor(payload) ? cborFactory.createParser(payload) : jsonFactory.createParser(payload);
+    }
+
+    public byte[] toJson(byte[] cbor) throws IOException {
+        return transcode(cborFactory, jsonFactory, cbor);
+    }
+
+    public byte[] toCbor(byte[] json) throws IOException {
+        return transcode(jsonFactory, cborFactory, json);
+    }
+
+    private static byte[] transcode(JsonFactory from, JsonFactory to, byte[] payload) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length + 16);
+        try (JsonParser parser = from.createParser(payload);
+             JsonGenerator generator = to.createGenerator(out)) {
+            while (parser.nextToken() != null) {
+                generator.copyCurrentEvent(parser);
+            }
+        }
+        return out.toByteArray();
+    }
+}
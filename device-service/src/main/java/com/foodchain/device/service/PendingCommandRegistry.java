@@ -0,0 +1,120 @@
+package com.foodchain.device.service;
+
+import com.foodchain.common.dto.mqtt.CommandResultDto;
+import com.foodchain.common.dto.mqtt.ControlCommandDto;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory table of commands awaiting a device acknowledgement, keyed by correlation
+ * id. Each entry is a future that completes on ack, on publish failure, or with a
+ * {@code TIMEOUT} result once its deadline passes, and removes itself when it does.
+ */
+@Component
+public class PendingCommandRegistry {
+
+    public static final String PENDING = "PENDING";
+    public static final String ACKED = "ACKED";
+    public static final String REJECTED = "REJECTED";
+    public static final String TIMEOUT = "TIMEOUT";
+    public static final String FAILED = "FAILED";
+
+    private final ConcurrentHashMap<String, PendingCommand> pending = new ConcurrentHashMap<>();
+    private final Timer ackLatency;
+    private final MeterRegistry meterRegistry;
+
+    public PendingCommandRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.ackLatency = Timer.builder("device.command.ack.latency").register(meterRegistry);
+        Gauge.builder("device.command.pending", pending, ConcurrentHashMap::size).register(meterRegistry);
+    }
+
+    public CompletableFuture<CommandResultDto> register(String correlationId, ControlCommandDto command, long timeoutMs) {
+        PendingCommand entry = new PendingCommand(command, System.nanoTime());
+        if (pending.putIfAbsent(correlationId, entry) != null) {
+            throw new IllegalStateException("Duplicate command correlation id: " + correlationId);
+        }
+        entry.future
+                .completeOnTimeout(result(correlationId, command, TIMEOUT, null, "No acknowledgement from device"),
+                        timeoutMs, TimeUnit.MILLISECONDS)
+                .whenComplete((result, error) -> {
+                    pending.remove(correlationId, entry);
+                    if (result != null) {
+                        Counter.builder("device.command.result").tag("status", result.status())
+                                .register(meterRegistry).increment();
+                    }
+                });
+        return entry.future;
+    }
+
+    /**
+     * Completes the pending command for {@code correlationId} if it was issued by this
+     * instance for {@code deviceId}. Returns {@code false} for unknown, expired or
+     * duplicate acknowledgements. Both ids are compared as UUIDs, so a device that
+     * echoes them in upper case still matches.
+     */
+    public boolean acknowledge(String correlationId, String deviceId, boolean accepted, String message) {
+        UUID correlation = parseUuid(correlationId);
+        UUID device = parseUuid(deviceId);
+        if (correlation == null || device == null) {
+            return false;
+        }
+        PendingCommand entry = pending.get(correlation.toString());
+        if (entry == null || !device.equals(parseUuid(entry.command.deviceId()))) {
+            return false;
+        }
+        long latencyNanos = System.nanoTime() - entry.startedAt;
+        CommandResultDto result = result(correlationId, entry.command, accepted ? ACKED : REJECTED,
+                TimeUnit.NANOSECONDS.toMillis(latencyNanos), message);
+        if (!entry.future.complete(result)) {
+            return false;
+        }
+        ackLatency.record(latencyNanos, TimeUnit.NANOSECONDS);
+        return true;
+    }
+
+    public void fail(String correlationId, String message) {
+        PendingCommand entry = pending.get(correlationId);
+        if (entry != null) {
+            entry.future.complete(result(correlationId, entry.command, FAILED, null, message));
+        }
+    }
+
+    public int size() {
+        return pending.size();
+    }
+
+    private static UUID parseUuid(String value) {
+        try {
+            return UUID.fromString(value);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public static CommandResultDto result(String correlationId, ControlCommandDto command, String status,
+                                          Long ackLatencyMs, String message) {
+        return new CommandResultDto(correlationId, command.deviceId(), command.controlId(), command.value(),
+                status, ackLatencyMs, message);
+    }
+
+    private static final class PendingCommand {
+
+        private final ControlCommandDto command;
+        private final long startedAt;
+        private final CompletableFuture<CommandResultDto> future = new CompletableFuture<>();
+
+        private PendingCommand(ControlCommandDto command, long startedAt) {
+            this.command = command;
+            this.startedAt = startedAt;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.foodchain.device.service;
+
+/**
+ * Mergeable quantile sketch with logarithmically sized bins (in the style of DDSketch):
+ * quantile estimates are within 1% relative error of a true sample value. Each sign
+ * keeps at most {@code maxBins} bins; beyond that the bins closest to zero are merged.
+ */
+public class QuantileSketch {
+
+    private static final double RELATIVE_ACCURACY = 0.01;
+    private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+    private static final double MIN_INDEXABLE_VALUE = 1e-9;
+
+    private final BinStore positive;
+    private final BinStore negative;
+    private long zeroCount;
+    private long count;
+
+    public QuantileSketch(int maxBins) {
+        this.positive = new BinStore(maxBins);
+        this.negative = new BinStore(maxBins);
+    }
+
+    public void add(double value) {
+        if (value > MIN_INDEXABLE_VALUE) {
+            positive.add(index(value), 1);
+        } else if (value < -MIN_INDEXABLE_VALUE) {
+            negative.add(index(-value), 1);
+        } else {
+            zeroCount++;
+        }
+        count++;
+    }
+
+    public void merge(QuantileSketch other) {
+        positive.merge(other.positive);
+        negative.merge(other.negative);
+        zeroCount += other.zeroCount;
+        count += other.count;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public double quantile(double q) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        long rank = (long) (q * (count - 1));
+        if (rank < negative.total) {
+            return -value(negative.indexAtRankFromTop(rank));
+        }
+        rank -= negative.total;
+        if (rank < zeroCount) {
+            return 0;
+        }
+        rank -= zeroCount;
+        return value(positive.indexAtRank(rank));
+    }
+
+    private static int index(double value) {
+        return (int) Math.ceil(Math.log(value) / LOG_GAMMA);
+    }
+
+    private static double value(int index) {
+        return 2 * Math.pow(GAMMA, index) / (GAMMA + 1);
+    }
+
+    private static final class BinStore {
+
+        private final int maxBins;
+        private int[] counts = new int[0];
+        private int offset;
+        private long total;
+
+        private BinStore(int maxBins) {
+            this.maxBins = maxBins;
+        }
+
+        private void add(int index, int n) {
+            ensureCovers(index);
+            counts[Math.max(index, offset) - offset] += n;
+            total += n;
+        }
+
+        private void merge(BinStore other) {
+            for (int i = 0; i < other.counts.length; i++) {
+                if (other.counts[i] != 0) {
+                    add(other.offset + i, other.counts[i]);
+                }
+            }
+        }
+
+        private int indexAtRank(long rank) {
+            long cumulative = 0;
+            for (int i = 0; i < counts.length; i++) {
+                cumulative += counts[i];
+                if (cumulative > rank) {
+                    return offset + i;
+                }
+            }
+            return offset + counts.length - 1;
+        }
+
+        private int indexAtRankFromTop(long rank) {
+            long cumulative = 0;
+            for (int i = counts.length - 1; i >= 0; i--) {
+                cumulative += counts[i];
+                if (cumulative > rank) {
+                    return offset + i;
+                }
+            }
+            return offset;
+        }
+
+        private void ensureCovers(int index) {
+            if (counts.length == 0) {
+                counts = new int[1];
+                offset = index;
+                return;
+            }
+            int high = Math.max(offset + counts.length - 1, index);
+            int low = Math.max(Math.min(offset, index), high - maxBins + 1);
+            if (low == offset && high == offset + counts.length - 1) {
+                return;
+            }
+
+            int[] resized = new int[high - low + 1];
+            for (int i = 0; i < counts.length; i++) {
+                resized[Math.max(offset + i, low) - low] += counts[i];
+            }
+            counts = resized;
+            offset = low;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.foodchain.device.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.sockjs.transport.SockJsSession;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Delivers each outbound MESSAGE frame in the encoding its subscription asked for.
+ * Subscriptions are JSON text by default; an {@code encoding:cbor} header on SUBSCRIBE
+ * switches them to CBOR sent as binary WebSocket frames. Payloads that already arrive in
+ * the requested encoding are passed through untouched, so CBOR from a device reaches a
+ * CBOR subscriber without being parsed. SockJS fallback transports cannot carry binary
+ * frames and always get JSON.
+ */
+@Component
+public class StompPayloadEncoder implements ChannelInterceptor {
+
+    private static final Logger log = LoggerFactory.getLogger(StompPayloadEncoder.class);
+
+    public static final String ENCODING_HEADER = "encoding";
+    public static final String CBOR_ENCODING = "cbor";
+
+    private final ConcurrentHashMap<String, Set<String>> cborSubscriptions = new ConcurrentHashMap<>();
+    private final Set<String> sockJsSessions = ConcurrentHashMap.newKeySet();
+    private final AtomicReference<Transcoded> lastTranscoded = new AtomicReference<>();
+    private final PayloadCodec payloadCodec;
+    private final Counter transcoded;
+
+    public StompPayloadEncoder(PayloadCodec payloadCodec, MeterRegistry meterRegistry) {
+        this.payloadCodec = payloadCodec;
+        this.transcoded = Counter.builder("websocket.payload.transcoded").register(meterRegistry);
+    }
+
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                if (session instanceof SockJsSession) {
+                    sockJsSessions.add(session.getId());
+                }
+                super.afterConnectionEstablished(session);
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                sockJsSessions.remove(session.getId());
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        SimpMessageHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, SimpMessageHeaderAccessor.class);
+        if (accessor == null || accessor.getSessionId() == null || accessor.getMessageType() == null) {
+            return message;
+        }
+        String sessionId = accessor.getSessionId();
+        switch (accessor.getMessageType()) {
+            case SUBSCRIBE -> {
+                if (CBOR_ENCODING.equalsIgnoreCase(accessor.getFirstNativeHeader(ENCODING_HEADER))
+                        && !sockJsSessions.contains(sessionId)) {
+                    cborSubscriptions.computeIfAbsent(sessionId, id -> ConcurrentHashMap.newKeySet())
+                            .add(accessor.getSubscriptionId());
+                }
+            }
+            case UNSUBSCRIBE -> {
+                Set<String> subscriptions = cborSubscriptions.get(sessionId);
+                if (subscriptions != null && accessor.getSubscriptionId() != null) {
+                    subscriptions.remove(accessor.getSubscriptionId());
+                }
+            }
+            case DISCONNECT -> cborSubscriptions.remove(sessionId);
+            case MESSAGE -> {
+                return encode(message, accessor);
+            }
+            default -> {
+            }
+        }
+        return message;
+    }
+
+    private Message<?> encode(Message<?> message, SimpMessageHeaderAccessor accessor) {
+        if (!(message.getPayload() instanceof byte[] payload)) {
+            return message;
+        }
+        Set<String> subscriptions = cborSubscriptions.get(accessor.getSessionId());
+        boolean wantsCbor = subscriptions != null && subscriptions.contains(accessor.getSubscriptionId());
+        MimeType contentType = accessor.getContentType();
+        boolean isCbor = contentType != null && PayloadCodec.APPLICATION_CBOR.equalsTypeAndSubtype(contentType);
+        if (!wantsCbor && !isCbor) {
+            return message;
+        }
+
+        byte[] encoded;
+        try {
+            encoded = wantsCbor == isCbor ? payload : transcode(payload, wantsCbor);
+        } catch (IOException e) {
+            log.warn("Dropping frame for {} that could not be transcoded: {}", accessor.getDestination(), e.getMessage());
+            return null;
+        }
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.wrap(message);
+        // Spring only writes binary WebSocket frames for application/octet-stream
+        headers.setContentType(wantsCbor ? MimeTypeUtils.APPLICATION_OCTET_STREAM : MimeTypeUtils.APPLICATION_JSON);
+        return MessageBuilder.createMessage(encoded, headers.getMessageHeaders());
+    }
+
+    /**
+     * The broker hands every subscriber the same payload array, so the last result is
+     * kept and reused while the same message fans out.
+     */
+    private byte[] transcode(byte[] payload, boolean toCbor) throws IOException {
+        Transcoded last = lastTranscoded.get();
+        if (last != null && last.source == payload && last.toCbor == toCbor) {
+            return last.result;
+        }
+        byte[] result = toCbor ? payloadCodec.toCbor(payload) : payloadCodec.toJson(payload);
+        transcoded.increment();
+        lastTranscoded.set(new Transcoded(payload, toCbor, result));
+        return result;
+    }
+
+    private record Transcoded(byte[] source, boolean toCbor, byte[] result) {}
+}
@@ -0,0 +1,377 @@
+package com.foodchain.device.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Tracks active STOMP subscriptions to per-device and per-user destinations from the
+ * SUBSCRIBE, UNSUBSCRIBE and DISCONNECT frames on the client inbound channel, so that
+ * {@link WebSocketNotificationService} can skip devices and users nobody is watching.
+ * Observed destinations keep their strings cached for as long as they are subscribed.
+ * Pattern subscriptions (e.g. {@code /topic/devices/*}{@code /telemetry}) are matched
+ * the same way the simple broker matches them. They are reference counted, so each
+ * distinct pattern is matched once per message however many sessions use it, and split
+ * by whether they can match device or user destinations.
+ */
+@Component
+public class StompSubscriptionRegistry implements ChannelInterceptor {
+
+    private static final String DEVICE_PREFIX = "/topic/devices/";
+    private static final String USER_PREFIX = "/topic/users/";
+    private static final String USER_SUFFIX = "/devices";
+
+    public enum DeviceDestination {
+        STATUS("/status"),
+        CONTROL("/control"),
+        TELEMETRY("/telemetry"),
+        TELEMETRY_SUMMARY("/telemetry/summary"),
+        COMMANDS("/commands");
+
+        private final String suffix;
+
+        DeviceDestination(String suffix) {
+            this.suffix = suffix;
+        }
+
+        public String destination(String deviceId) {
+            return DEVICE_PREFIX + deviceId + suffix;
+        }
+
+        /** Name used for the {@code kind} field of the per-user envelope. */
+        public String kind() {
+            return suffix.substring(1).replace('/', '_');
+        }
+
+        private static DeviceDestination fromSuffix(String suffix) {
+            for (DeviceDestination value : values()) {
+                if (value.suffix.equals(suffix)) {
+                    return value;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Map<String, String>> sessions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ObservedDevice> devices = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ObservedUser> users = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Integer> patterns = new ConcurrentHashMap<>();
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+    private final AtomicLong interestVersion = new AtomicLong();
+
+    private volatile String[] devicePatterns = new String[0];
+    private volatile String[] userPatterns = new String[0];
+
+    public StompSubscriptionRegistry(MeterRegistry meterRegistry) {
+        Gauge.builder("websocket.observed.devices", devices, Map::size).register(meterRegistry);
+        Gauge.builder("websocket.observed.users", users, Map::size).register(meterRegistry);
+        Gauge.builder("websocket.pattern.subscriptions", patterns, Map::size).register(meterRegistry);
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        SimpMessageHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, SimpMessageHeaderAccessor.class);
+        if (accessor == null || accessor.getSessionId() == null || accessor.getMessageType() == null) {
+            return message;
+        }
+        switch (accessor.getMessageType()) {
+            case SUBSCRIBE -> subscribe(accessor.getSessionId(), accessor.getSubscriptionId(), accessor.getDestination());
+            case UNSUBSCRIBE -> unsubscribe(accessor.getSessionId(), accessor.getSubscriptionId());
+            case DISCONNECT -> disconnect(accessor.getSessionId());
+            default -> {
+            }
+        }
+        return message;
+    }
+
+    /**
+     * Returns the destination for the device if at least one session is subscribed to
+     * it, or {@code null} if the message can be dropped.
+     */
+    public String observedDestination(String deviceId, DeviceDestination kind) {
+        ObservedDevice device = devices.get(deviceId);
+        if (device != null) {
+            String destination = device.destination(kind);
+            if (destination != null) {
+                return destination;
+            }
+        }
+        String[] candidates = devicePatterns;
+        if (candidates.length == 0) {
+            return null;
+        }
+        String destination = kind.destination(deviceId);
+        for (String pattern : candidates) {
+            if (pathMatcher.match(pattern, destination)) {
+                return destination;
+            }
+        }
+        return null;
+    }
+
+    public boolean isObserved(String deviceId, DeviceDestination kind) {
+        return observedDestination(deviceId, kind) != null;
+    }
+
+    /**
+     * Returns {@code /topic/users/{userId}/devices} if some session is subscribed to it,
+     * or {@code null} otherwise.
+     */
+    public String observedUserDestination(String userId) {
+        ObservedUser user = users.get(userId);
+        if (user != null) {
+            return user.destination;
+        }
+        String[] candidates = userPatterns;
+        if (candidates.length == 0) {
+            return null;
+        }
+        String destination = userDestination(userId);
+        for (String pattern : candidates) {
+            if (pathMatcher.match(pattern, destination)) {
+                return destination;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Whether any session could receive a per-user envelope: an exact user subscription
+     * or a pattern that can match {@code /topic/users/{id}/devices}.
+     */
+    public boolean hasUserSubscriptions() {
+        return !users.isEmpty() || userPatterns.length > 0;
+    }
+
+    /**
+     * Changes whenever a device or user gains its first or loses its last subscriber, or
+     * a pattern subscription comes or goes.
+     */
+    public long interestVersion() {
+        return interestVersion.get();
+    }
+
+    /** The device ids, user ids and patterns this node currently has subscribers for. */
+    public Interest interest() {
+        return new Interest(Set.copyOf(devices.keySet()), Set.copyOf(users.keySet()), List.copyOf(patterns.keySet()));
+    }
+
+    private void subscribe(String sessionId, String subscriptionId, String destination) {
+        if (subscriptionId == null || destination == null || !isTracked(destination)) {
+            return;
+        }
+        String previous = sessions.computeIfAbsent(sessionId, id -> new ConcurrentHashMap<>())
+                .put(subscriptionId, destination);
+        if (previous != null) {
+            release(previous);
+        }
+        acquire(destination);
+    }
+
+    private void unsubscribe(String sessionId, String subscriptionId) {
+        Map<String, String> subscriptions = sessions.get(sessionId);
+        String destination = subscriptions != null && subscriptionId != null ? subscriptions.remove(subscriptionId) : null;
+        if (destination != null) {
+            release(destination);
+        }
+    }
+
+    private void disconnect(String sessionId) {
+        Map<String, String> subscriptions = sessions.remove(sessionId);
+        if (subscriptions != null) {
+            subscriptions.values().forEach(this::release);
+        }
+    }
+
+    private void acquire(String destination) {
+        if (pathMatcher.isPattern(destination)) {
+            if (patterns.merge(destination, 1, Integer::sum) == 1) {
+                refreshPatterns();
+                interestVersion.incrementAndGet();
+            }
+            return;
+        }
+        if (destination.startsWith(USER_PREFIX)) {
+            if (users.compute(userId(destination), (id, user) -> user != null ? user.add() : new ObservedUser(destination))
+                    .count() == 1) {
+                interestVersion.incrementAndGet();
+            }
+            return;
+        }
+        String deviceId = deviceId(destination);
+        DeviceDestination kind = DeviceDestination.fromSuffix(destination.substring(DEVICE_PREFIX.length() + deviceId.length()));
+        boolean[] added = new boolean[1];
+        devices.compute(deviceId, (id, device) -> {
+            ObservedDevice observed = device;
+            if (observed == null) {
+                observed = new ObservedDevice();
+                added[0] = true;
+            }
+            observed.add(id, kind);
+            return observed;
+        });
+        // bumped only after the map changed, so a reader that sees the new version sees the new entry
+        if (added[0]) {
+            interestVersion.incrementAndGet();
+        }
+    }
+
+    private void release(String destination) {
+        if (pathMatcher.isPattern(destination)) {
+            if (patterns.containsKey(destination)
+                    && patterns.computeIfPresent(destination, (pattern, count) -> count > 1 ? count - 1 : null) == null) {
+                refreshPatterns();
+                interestVersion.incrementAndGet();
+            }
+            return;
+        }
+        if (destination.startsWith(USER_PREFIX)) {
+            String userId = userId(destination);
+            if (users.containsKey(userId) && users.computeIfPresent(userId, (id, user) -> user.remove()) == null) {
+                interestVersion.incrementAndGet();
+            }
+            return;
+        }
+        String deviceId = deviceId(destination);
+        DeviceDestination kind = DeviceDestination.fromSuffix(destination.substring(DEVICE_PREFIX.length() + deviceId.length()));
+        if (devices.containsKey(deviceId)
+                && devices.computeIfPresent(deviceId, (id, device) -> device.remove(kind) ? null : device) == null) {
+            interestVersion.incrementAndGet();
+        }
+    }
+
+    /**
+     * Rebuilds the per-kind pattern arrays from the distinct patterns. Runs after the map
+     * changed, so the last rebuild always sees the last change.
+     */
+    private synchronized void refreshPatterns() {
+        List<String> device = new ArrayList<>();
+        List<String> user = new ArrayList<>();
+        for (String pattern : patterns.keySet()) {
+            String literal = literalPrefix(pattern);
+            if (literal.startsWith(DEVICE_PREFIX) || DEVICE_PREFIX.startsWith(literal)) {
+                device.add(pattern);
+            }
+            if (literal.startsWith(USER_PREFIX) || USER_PREFIX.startsWith(literal)) {
+                user.add(pattern);
+            }
+        }
+        devicePatterns = device.toArray(String[]::new);
+        userPatterns = user.toArray(String[]::new);
+    }
+
+    /**
+     * Only device and user destinations are tracked: exact ones with a known suffix, and
+     * patterns that could match them.
+     */
+    private boolean isTracked(String destination) {
+        if (pathMatcher.isPattern(destination)) {
+            return destination.startsWith("/topic/");
+        }
+        if (destination.startsWith(USER_PREFIX)) {
+            return destination.endsWith(USER_SUFFIX) && destination.length() > USER_PREFIX.length() + USER_SUFFIX.length()
+                    && destination.indexOf('/', USER_PREFIX.length()) == destination.length() - USER_SUFFIX.length();
+        }
+        if (!destination.startsWith(DEVICE_PREFIX)) {
+            return false;
+        }
+        String deviceId = deviceId(destination);
+        return !deviceId.isEmpty()
+                && DeviceDestination.fromSuffix(destination.substring(DEVICE_PREFIX.length() + deviceId.length())) != null;
+    }
+
+    private static String literalPrefix(String pattern) {
+        int end = pattern.length();
+        for (char wildcard : new char[] {'*', '?', '{'}) {
+            int index = pattern.indexOf(wildcard);
+            if (index >= 0) {
+                end = Math.min(end, index);
+            }
+        }
+        return pattern.substring(0, end);
+    }
+
+    public static String userDestination(String userId) {
+        return USER_PREFIX + userId + USER_SUFFIX;
+    }
+
+    private static String userId(String destination) {
+        return destination.substring(USER_PREFIX.length(), destination.length() - USER_SUFFIX.length());
+    }
+
+    private static String deviceId(String destination) {
+        int end = destination.indexOf('/', DEVICE_PREFIX.length());
+        return destination.substring(DEVICE_PREFIX.length(), end > 0 ? end : destination.length());
+    }
+
+    /**
+     * Subscription counts and cached destination strings for one device. Counts are only
+     * touched inside {@code compute}; destinations are read lock-free by publishers.
+     */
+    private static final class ObservedDevice {
+
+        private final AtomicReferenceArray<String> destinations = new AtomicReferenceArray<>(DeviceDestination.values().length);
+        private final int[] counts = new int[DeviceDestination.values().length];
+        private int total;
+
+        private void add(String deviceId, DeviceDestination kind) {
+            int index = kind.ordinal();
+            if (counts[index]++ == 0) {
+                destinations.set(index, kind.destination(deviceId));
+            }
+            total++;
+        }
+
+        /** Returns {@code true} once the device has no subscriptions left. */
+        private boolean remove(DeviceDestination kind) {
+            int index = kind.ordinal();
+            if (counts[index] > 0 && --counts[index] == 0) {
+                destinations.set(index, null);
+            }
+            total = Math.max(0, total - 1);
+            return total == 0;
+        }
+
+        private String destination(DeviceDestination kind) {
+            return destinations.get(kind.ordinal());
+        }
+    }
+
+    public record Interest(Set<String> deviceIds, Set<String> userIds, List<String> patterns) {
+
+        public boolean isEmpty() {
+            return deviceIds.isEmpty() && userIds.isEmpty() && patterns.isEmpty();
+        }
+    }
+
+    /** Subscription count for one user topic; replaced inside {@code compute} on every change. */
+    private record ObservedUser(String destination, int count) {
+
+        private ObservedUser(String destination) {
+            this(destination, 1);
+        }
+
+        private ObservedUser add() {
+            return new ObservedUser(destination, count + 1);
+        }
+
+        private ObservedUser remove() {
+            return count > 1 ? new ObservedUser(destination, count - 1) : null;
+        }
+    }
+}
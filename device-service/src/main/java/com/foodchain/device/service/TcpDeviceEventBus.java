@@ -0,0 +1,628 @@
+package com.foodchain.device.service;
+
+import com.foodchain.device.service.StompSubscriptionRegistry.DeviceDestination;
+import com.foodchain.device.service.StompSubscriptionRegistry.Interest;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.AntPathMatcher;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Node-to-node event fan-out over plain TCP. Every node listens on {@code port} and
+ * dials every peer it discovers. Over each dialled connection a node sends its current
+ * {@link Interest} (observed devices, users and patterns) whenever it changes. The peer
+ * answers on the same connection with batches of the events that match. Batches are
+ * flushed every {@code flush-interval-ms} or at {@code max-batch} events, and are
+ * deflate-compressed. A slow peer only loses its own events: each peer has a bounded
+ * queue, and events are dropped once it is full.
+ *
+ * <p>Frames are {@code [int length][byte type][body]}; a node recognises a connection
+ * to itself from the HELLO exchange and stops dialling that address.
+ *
+ * <p>The protocol has no authentication or encryption. The port must only be reachable
+ * by other replicas, which the k8s manifests enforce with a NetworkPolicy.
+ */
+public class TcpDeviceEventBus implements DeviceEventBus, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(TcpDeviceEventBus.class);
+
+    private static final byte FRAME_HELLO = 1;
+    private static final byte FRAME_INTEREST = 2;
+    private static final byte FRAME_EVENTS = 3;
+    private static final int MAX_FRAME_BYTES = 16 * 1024 * 1024;
+    private static final int CONNECT_TIMEOUT_MS = 2000;
+    private static final int HANDSHAKE_TIMEOUT_MS = 2000;
+    private static final DeviceDestination[] KINDS = DeviceDestination.values();
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final StompSubscriptionRegistry subscriptionRegistry;
+    private final DeviceOwnerCache ownerCache;
+    private final Supplier<Collection<InetSocketAddress>> peerSource;
+    private final Settings settings;
+    private final CopyOnWriteArrayList<Downstream> downstreams = new CopyOnWriteArrayList<>();
+    private final ConcurrentHashMap<InetSocketAddress, Upstream> upstreams = new ConcurrentHashMap<>();
+    private final Set<InetSocketAddress> selfAddresses = ConcurrentHashMap.newKeySet();
+    private final Set<InetSocketAddress> dialling = ConcurrentHashMap.newKeySet();
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+    private final ScheduledExecutorService maintenance;
+    private final ExecutorService io;
+    private final Counter sent;
+    private final Counter received;
+    private final Counter dropped;
+    private final Counter bytesSent;
+
+    private volatile Delivery delivery = (deviceId, kind, payload) -> { };
+    private volatile boolean running;
+    private ServerSocket server;
+    private long lastDiscovery;
+
+    public TcpDeviceEventBus(StompSubscriptionRegistry subscriptionRegistry,
+                             DeviceOwnerCache ownerCache,
+                             Supplier<Collection<InetSocketAddress>> peerSource,
+                             Settings settings,
+                             MeterRegistry meterRegistry) {
+        this.subscriptionRegistry = subscriptionRegistry;
+        this.ownerCache = ownerCache;
+        this.peerSource = peerSource;
+        this.settings = settings;
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(daemon("fanout-maintenance"));
+        this.io = Executors.newCachedThreadPool(daemon("fanout-io"));
+
+        Gauge.builder("websocket.fanout.peers", upstreams, ConcurrentHashMap::size).register(meterRegistry);
+        this.sent = Counter.builder("websocket.fanout.events").tag("direction", "sent").register(meterRegistry);
+        this.received = Counter.builder("websocket.fanout.events").tag("direction", "received").register(meterRegistry);
+        this.dropped = Counter.builder("websocket.fanout.dropped").register(meterRegistry);
+        this.bytesSent = Counter.builder("websocket.fanout.bytes").baseUnit("bytes").register(meterRegistry);
+    }
+
+    public synchronized void start() throws IOException {
+        server = new ServerSocket();
+        server.setReuseAddress(true);
+        server.bind(new InetSocketAddress(settings.port()));
+        running = true;
+        io.execute(this::acceptLoop);
+        maintenance.scheduleWithFixedDelay(this::maintain, 0, settings.interestIntervalMs(), TimeUnit.MILLISECONDS);
+        log.info("Device event fan-out listening on port {} as node {}", server.getLocalPort(), nodeId);
+    }
+
+    /** The bound port; differs from the configured one when that is {@code 0}. */
+    public int port() {
+        return server.getLocalPort();
+    }
+
+    @Override
+    public void setLocalDelivery(Delivery delivery) {
+        this.delivery = delivery;
+    }
+
+    @Override
+    public boolean hasRemoteSubscribers() {
+        for (Downstream downstream : downstreams) {
+            if (!downstream.interest.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void publish(String deviceId, DeviceDestination kind, byte[] payload) {
+        if (downstreams.isEmpty()) {
+            return;
+        }
+        Event event = null;
+        String owner = null;
+        boolean ownerResolved = false;
+        for (Downstream downstream : downstreams) {
+            Interest interest = downstream.interest;
+            if (interest.isEmpty()) {
+                continue;
+            }
+            boolean matches = interest.deviceIds().contains(deviceId);
+            if (!matches && (!interest.userIds().isEmpty() || !interest.patterns().isEmpty()) && !ownerResolved) {
+                owner = owner(deviceId);
+                ownerResolved = true;
+            }
+            if (!matches && owner != null) {
+                matches = interest.userIds().contains(owner);
+            }
+            if (!matches && !interest.patterns().isEmpty()) {
+                matches = matchesPattern(interest.patterns(), deviceId, kind, owner);
+            }
+            if (!matches) {
+                continue;
+            }
+            if (event == null) {
+                event = new Event(deviceId, kind, payload);
+            }
+            if (!downstream.queue.offer(event)) {
+                dropped.increment();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        running = false;
+        maintenance.shutdownNow();
+        closeQuietly(server);
+        upstreams.values().forEach(Upstream::close);
+        upstreams.clear();
+        downstreams.forEach(Downstream::close);
+        downstreams.clear();
+        io.shutdownNow();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                io.execute(() -> serveDownstream(socket));
+            } catch (IOException e) {
+                if (running) {
+                    log.warn("Error accepting fan-out connection: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /** A peer dialled us: read its interest and stream matching events back to it. */
+    private void serveDownstream(Socket socket) {
+        Downstream downstream = null;
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            socket.setSoTimeout(HANDSHAKE_TIMEOUT_MS);
+            writeFrame(out, FRAME_HELLO, nodeId.getBytes(StandardCharsets.UTF_8));
+            Frame hello = readFrame(in);
+            String remoteId = new String(hello.body, StandardCharsets.UTF_8);
+            if (hello.type != FRAME_HELLO || nodeId.equals(remoteId)) {
+                closeQuietly(socket);
+                return;
+            }
+            socket.setSoTimeout(0);
+            downstream = new Downstream(remoteId, socket, out, settings.queueCapacity());
+            downstreams.add(downstream);
+            io.execute(downstream::runWriter);
+            log.info("Fan-out peer {} connected from {}", remoteId, socket.getRemoteSocketAddress());
+
+            while (running && !downstream.closed) {
+                Frame frame = readFrame(in);
+                if (frame.type == FRAME_INTEREST) {
+                    downstream.interest = decodeInterest(inflate(frame.body));
+                }
+            }
+        } catch (IOException | DataFormatException e) {
+            if (running) {
+                log.info("Fan-out peer at {} disconnected: {}", socket.getRemoteSocketAddress(), e.getMessage());
+            }
+        } finally {
+            if (downstream != null) {
+                downstreams.remove(downstream);
+                downstream.close();
+            } else {
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    private void maintain() {
+        try {
+            long now = System.currentTimeMillis();
+            if (now - lastDiscovery >= settings.discoveryIntervalMs() || upstreams.isEmpty()) {
+                lastDiscovery = now;
+                refreshPeers();
+            }
+            long version = subscriptionRegistry.interestVersion();
+            byte[] encoded = null;
+            for (Upstream upstream : upstreams.values()) {
+                if (upstream.sentVersion == version) {
+                    continue;
+                }
+                if (encoded == null) {
+                    encoded = encodeCompressedInterest(subscriptionRegistry.interest());
+                }
+                try {
+                    upstream.send(FRAME_INTEREST, encoded);
+                    upstream.sentVersion = version;
+                } catch (IOException e) {
+                    log.info("Lost fan-out connection to {}: {}", upstream.address, e.getMessage());
+                    upstreams.remove(upstream.address, upstream);
+                    upstream.close();
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("Error maintaining fan-out connections", e);
+        }
+    }
+
+    private void refreshPeers() {
+        Set<InetSocketAddress> peers = new HashSet<>(peerSource.get());
+        peers.removeAll(selfAddresses);
+        for (Upstream upstream : upstreams.values()) {
+            if (!peers.contains(upstream.address)) {
+                upstreams.remove(upstream.address, upstream);
+                upstream.close();
+            }
+        }
+        for (InetSocketAddress peer : peers) {
+            if (!upstreams.containsKey(peer) && dialling.add(peer)) {
+                io.execute(() -> {
+                    try {
+                        connect(peer);
+                    } finally {
+                        dialling.remove(peer);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Dials a peer to receive its events; the reader runs until the connection drops. Runs
+     * on the io pool so that a peer that is slow to answer does not hold up the interest
+     * updates to the others; it picks up our interest on the next maintenance run.
+     */
+    private void connect(InetSocketAddress address) {
+        Socket socket = new Socket();
+        try {
+            socket.connect(address, CONNECT_TIMEOUT_MS);
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(HANDSHAKE_TIMEOUT_MS);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            writeFrame(out, FRAME_HELLO, nodeId.getBytes(StandardCharsets.UTF_8));
+            Frame hello = readFrame(in);
+            if (hello.type != FRAME_HELLO || nodeId.equals(new String(hello.body, StandardCharsets.UTF_8))) {
+                selfAddresses.add(address);
+                closeQuietly(socket);
+                return;
+            }
+            socket.setSoTimeout(0);
+            Upstream upstream = new Upstream(address, socket, out);
+            upstreams.put(address, upstream);
+            if (!running) {
+                upstreams.remove(address, upstream);
+                upstream.close();
+                return;
+            }
+            io.execute(() -> readEvents(upstream, in));
+            log.info("Connected to fan-out peer at {}", address);
+        } catch (IOException e) {
+            log.debug("Could not connect to fan-out peer at {}: {}", address, e.getMessage());
+            closeQuietly(socket);
+        }
+    }
+
+    private void readEvents(Upstream upstream, DataInputStream in) {
+        Inflater inflater = new Inflater();
+        try {
+            while (running && !upstream.closed) {
+                Frame frame = readFrame(in);
+                if (frame.type != FRAME_EVENTS) {
+                    continue;
+                }
+                DataInputStream events = new DataInputStream(new ByteArrayInputStream(inflate(frame.body, inflater)));
+                int count = events.readInt();
+                for (int i = 0; i < count; i++) {
+                    String deviceId = events.readUTF();
+                    int kind = events.readUnsignedByte();
+                    int length = events.readInt();
+                    if (kind >= KINDS.length || length < 0 || length > MAX_FRAME_BYTES) {
+                        throw new IOException("Malformed fan-out event for device " + deviceId);
+                    }
+                    byte[] payload = new byte[length];
+                    events.readFully(payload);
+                    received.increment();
+                    try {
+                        delivery.deliver(deviceId, KINDS[kind], payload);
+                    } catch (RuntimeException e) {
+                        log.error("Error delivering fan-out event for device {}", deviceId, e);
+                    }
+                }
+            }
+        } catch (IOException | DataFormatException e) {
+            if (running && !upstream.closed) {
+                log.info("Lost fan-out connection to {}: {}", upstream.address, e.getMessage());
+            }
+        } finally {
+            inflater.end();
+            upstreams.remove(upstream.address, upstream);
+            upstream.close();
+        }
+    }
+
+    private boolean matchesPattern(List<String> patterns, String deviceId, DeviceDestination kind, String owner) {
+        String destination = kind.destination(deviceId);
+        String userDestination = owner != null ? StompSubscriptionRegistry.userDestination(owner) : null;
+        for (String pattern : patterns) {
+            if (pathMatcher.match(pattern, destination)
+                    || userDestination != null && pathMatcher.match(pattern, userDestination)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Cache only: publish runs on the ingest thread, and a miss is resolved in the background. */
+    private String owner(String deviceId) {
+        try {
+            UUID owner = ownerCache.cachedOwner(UUID.fromString(deviceId));
+            return owner != null ? owner.toString() : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static byte[] encodeCompressedInterest(Interest interest) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            return deflate(encodeInterest(interest), deflater);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] encodeInterest(Interest interest) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeStrings(out, interest.deviceIds());
+            writeStrings(out, interest.userIds());
+            writeStrings(out, interest.patterns());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Interest decodeInterest(byte[] body) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        return new Interest(Set.copyOf(readStrings(in)), Set.copyOf(readStrings(in)), readStrings(in));
+    }
+
+    private static void writeStrings(DataOutputStream out, Collection<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static List<String> readStrings(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(in.readUTF());
+        }
+        return values;
+    }
+
+    /** Compressed bodies start with the uncompressed length. */
+    private static byte[] deflate(byte[] raw, Deflater deflater) {
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + 16);
+        out.write(raw.length >>> 24);
+        out.write(raw.length >>> 16);
+        out.write(raw.length >>> 8);
+        out.write(raw.length);
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] inflate(byte[] body) throws DataFormatException, IOException {
+        Inflater inflater = new Inflater();
+        try {
+            return inflate(body, inflater);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] body, Inflater inflater) throws DataFormatException, IOException {
+        if (body.length < 4) {
+            throw new IOException("Truncated fan-out frame");
+        }
+        int length = (body[0] & 0xFF) << 24 | (body[1] & 0xFF) << 16 | (body[2] & 0xFF) << 8 | body[3] & 0xFF;
+        if (length < 0 || length > MAX_FRAME_BYTES) {
+            throw new IOException("Fan-out frame too large: " + length);
+        }
+        inflater.reset();
+        inflater.setInput(body, 4, body.length - 4);
+        byte[] raw = new byte[length];
+        int read = 0;
+        while (read < length && !inflater.finished()) {
+            int n = inflater.inflate(raw, read, length - read);
+            if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                throw new IOException("Truncated fan-out frame");
+            }
+            read += n;
+        }
+        return raw;
+    }
+
+    private static void writeFrame(DataOutputStream out, byte type, byte[] body) throws IOException {
+        out.writeInt(body.length + 1);
+        out.writeByte(type);
+        out.write(body);
+        out.flush();
+    }
+
+    private static Frame readFrame(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 1 || length > MAX_FRAME_BYTES) {
+            throw new IOException("Invalid fan-out frame length: " + length);
+        }
+        byte type = in.readByte();
+        byte[] body = new byte[length - 1];
+        in.readFully(body);
+        return new Frame(type, body);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+            // nothing left to release
+        }
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    public record Settings(int port, long flushIntervalMs, int maxBatch, int queueCapacity,
+                           long interestIntervalMs, long discoveryIntervalMs) {}
+
+    private record Frame(byte type, byte[] body) {}
+
+    private record Event(String deviceId, DeviceDestination kind, byte[] payload) {}
+
+    /** A peer receiving our events. */
+    private final class Downstream {
+
+        private final String remoteId;
+        private final Socket socket;
+        private final DataOutputStream out;
+        private final ArrayBlockingQueue<Event> queue;
+        private volatile Interest interest = new Interest(Set.of(), Set.of(), List.of());
+        private volatile boolean closed;
+
+        private Downstream(String remoteId, Socket socket, DataOutputStream out, int queueCapacity) {
+            this.remoteId = remoteId;
+            this.socket = socket;
+            this.out = out;
+            this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        }
+
+        private void runWriter() {
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            List<Event> batch = new ArrayList<>(settings.maxBatch());
+            try {
+                while (running && !closed) {
+                    Event first = queue.poll(1, TimeUnit.SECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(settings.flushIntervalMs());
+                    while (batch.size() < settings.maxBatch()) {
+                        long remaining = deadline - System.nanoTime();
+                        Event next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                    }
+                    byte[] body = deflate(encodeEvents(batch), deflater);
+                    writeFrame(out, FRAME_EVENTS, body);
+                    sent.increment(batch.size());
+                    bytesSent.increment(body.length + 5);
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                if (running && !closed) {
+                    log.info("Lost fan-out peer {}: {}", remoteId, e.getMessage());
+                }
+            } finally {
+                deflater.end();
+                downstreams.remove(this);
+                close();
+            }
+        }
+
+        private byte[] encodeEvents(List<Event> events) throws IOException {
+            int size = 4;
+            for (Event event : events) {
+                size += event.deviceId.length() + event.payload.length + 7;
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(size);
+            DataOutputStream data = new DataOutputStream(bytes);
+            data.writeInt(events.size());
+            for (Event event : events) {
+                data.writeUTF(event.deviceId);
+                data.writeByte(event.kind.ordinal());
+                data.writeInt(event.payload.length);
+                data.write(event.payload);
+            }
+            return bytes.toByteArray();
+        }
+
+        private void close() {
+            closed = true;
+            queue.clear();
+            closeQuietly(socket);
+        }
+    }
+
+    /** A peer whose events we receive; we send it our interest. */
+    private static final class Upstream {
+
+        private final InetSocketAddress address;
+        private final Socket socket;
+        private final DataOutputStream out;
+        private volatile long sentVersion = -1;
+        private volatile boolean closed;
+
+        private Upstream(InetSocketAddress address, Socket socket, DataOutputStream out) {
+            this.address = address;
+            this.socket = socket;
+            this.out = out;
+        }
+
+        private synchronized void send(byte type, byte[] body) throws IOException {
+            writeFrame(out, type, body);
+        }
+
+        private void close() {
+            closed = true;
+            closeQuietly(socket);
+        }
+    }
+}
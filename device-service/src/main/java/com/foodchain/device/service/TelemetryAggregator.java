@@ -0,0 +1,198 @@
+package com.foodchain.device.service;
+
+import com.foodchain.common.dto.device.TelemetryAggregateDto;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maintains count/min/max/mean and approximate p50/p95/p99 for every numeric telemetry
+ * field of every device over tumbling 1-minute, 5-minute and 1-hour windows aligned
+ * to the wall clock. Completed windows are published once a minute on
+ * {@code /topic/devices/{id}/telemetry/summary}.
+ */
+@Component
+public class TelemetryAggregator {
+
+    private static final long[] WINDOW_MILLIS = {60_000L, 300_000L, 3_600_000L};
+    private static final String[] WINDOW_NAMES = {"1m", "5m", "1h"};
+    private static final long IDLE_EVICTION_MILLIS = 2 * WINDOW_MILLIS[WINDOW_MILLIS.length - 1];
+
+    private final ConcurrentHashMap<UUID, DeviceWindows> devices = new ConcurrentHashMap<>();
+    private final WebSocketNotificationService webSocketService;
+
+    @Value("${app.telemetry.aggregates.max-fields}")
+    private int maxFields;
+
+    @Value("${app.telemetry.aggregates.max-bins}")
+    private int maxBins;
+
+    public TelemetryAggregator(WebSocketNotificationService webSocketService) {
+        this.webSocketService = webSocketService;
+    }
+
+    public void record(UUID deviceId, TelemetrySample sample) {
+        long now = System.currentTimeMillis();
+        devices.computeIfAbsent(deviceId, id -> new DeviceWindows()).add(sample, now);
+    }
+
+    public List<TelemetryAggregateDto> aggregates(UUID deviceId) {
+        DeviceWindows windows = devices.get(deviceId);
+        return windows != null ? windows.snapshot(System.currentTimeMillis()) : List.of();
+    }
+
+    @Scheduled(cron = "${app.telemetry.aggregates.publish-cron}")
+    public void publishSummaries() {
+        long now = System.currentTimeMillis();
+        devices.forEach((deviceId, windows) -> {
+            List<TelemetryAggregateDto> completed = windows.drainCompleted(now);
+            if (!completed.isEmpty()) {
+                webSocketService.sendTelemetrySummary(deviceId.toString(), completed);
+            }
+            if (windows.idleMillis(now) > IDLE_EVICTION_MILLIS) {
+                devices.remove(deviceId, windows);
+            }
+        });
+    }
+
+    private final class DeviceWindows {
+
+        private final Map<String, FieldWindows> fields = new LinkedHashMap<>();
+        private final List<TelemetryAggregateDto> completed = new ArrayList<>();
+        private long lastSampleMillis;
+
+        private synchronized void add(TelemetrySample sample, long now) {
+            lastSampleMillis = now;
+            for (int i = 0; i < sample.size(); i++) {
+                double value = sample.value(i);
+                if (!Double.isFinite(value)) {
+                    continue;
+                }
+                FieldWindows field = fields.get(sample.name(i));
+                if (field == null) {
+                    if (fields.size() >= maxFields) {
+                        continue;
+                    }
+                    field = new FieldWindows(sample.name(i));
+                    fields.put(field.metric, field);
+                }
+                field.add(value, now, completed);
+            }
+        }
+
+        private synchronized List<TelemetryAggregateDto> drainCompleted(long now) {
+            for (FieldWindows field : fields.values()) {
+                field.roll(now, completed);
+            }
+            List<TelemetryAggregateDto> drained = new ArrayList<>(completed);
+            completed.clear();
+            return drained;
+        }
+
+        private synchronized List<TelemetryAggregateDto> snapshot(long now) {
+            List<TelemetryAggregateDto> result = new ArrayList<>();
+            for (FieldWindows field : fields.values()) {
+                field.roll(now, completed);
+                field.snapshot(result);
+            }
+            return result;
+        }
+
+        private synchronized long idleMillis(long now) {
+            return now - lastSampleMillis;
+        }
+    }
+
+    private final class FieldWindows {
+
+        private final String metric;
+        private final long[] starts = new long[WINDOW_MILLIS.length];
+        private final WindowStats[] current = new WindowStats[WINDOW_MILLIS.length];
+        private final TelemetryAggregateDto[] last = new TelemetryAggregateDto[WINDOW_MILLIS.length];
+
+        private FieldWindows(String metric) {
+            this.metric = metric;
+        }
+
+        private void add(double value, long now, List<TelemetryAggregateDto> completed) {
+            roll(now, completed);
+            for (int w = 0; w < WINDOW_MILLIS.length; w++) {
+                if (current[w] == null) {
+                    current[w] = new WindowStats(maxBins);
+                    starts[w] = now - now % WINDOW_MILLIS[w];
+                }
+                current[w].add(value);
+            }
+        }
+
+        private void roll(long now, List<TelemetryAggregateDto> completed) {
+            for (int w = 0; w < WINDOW_MILLIS.length; w++) {
+                if (current[w] != null && now >= starts[w] + WINDOW_MILLIS[w]) {
+                    last[w] = current[w].toDto(metric, w, starts[w], true);
+                    completed.add(last[w]);
+                    current[w] = null;
+                }
+            }
+        }
+
+        private void snapshot(List<TelemetryAggregateDto> result) {
+            for (int w = 0; w < WINDOW_MILLIS.length; w++) {
+                if (last[w] != null) {
+                    result.add(last[w]);
+                }
+                if (current[w] != null) {
+                    result.add(current[w].toDto(metric, w, starts[w], false));
+                }
+            }
+        }
+    }
+
+    private static final class WindowStats {
+
+        private final QuantileSketch sketch;
+        private long count;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+        private double sum;
+
+        private WindowStats(int maxBins) {
+            this.sketch = new QuantileSketch(maxBins);
+        }
+
+        private void add(double value) {
+            count++;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            sum += value;
+            sketch.add(value);
+        }
+
+        private TelemetryAggregateDto toDto(String metric, int window, long start, boolean complete) {
+            return new TelemetryAggregateDto(
+                    metric,
+                    WINDOW_NAMES[window],
+                    start,
+                    start + WINDOW_MILLIS[window],
+                    complete,
+                    count,
+                    min,
+                    max,
+                    sum / count,
+                    clamp(sketch.quantile(0.50)),
+                    clamp(sketch.quantile(0.95)),
+                    clamp(sketch.quantile(0.99))
+            );
+        }
+
+        private double clamp(double estimate) {
+            return Math.max(min, Math.min(max, estimate));
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package com.foodchain.device.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opt-in micro-batching of telemetry frames. A client that adds a {@code batch-ms}
+ * and/or {@code batch-size} header to a telemetry SUBSCRIBE receives one MESSAGE frame
+ * per window containing a JSON array of {@code {"device_id", "payload"}} entries,
+ * instead of one frame per reading. Typically used with a wildcard subscription such as
+ * {@code /topic/devices/*}{@code /telemetry}. While the session is behind, the batch is
+ * held and reduced to the latest entry per device once it reaches its size limit.
+ */
+@Component
+public class TelemetryBatcher implements ChannelInterceptor {
+
+    public static final String BATCH_MS_HEADER = "batch-ms";
+    public static final String BATCH_SIZE_HEADER = "batch-size";
+
+    private static final String DESTINATION_PREFIX = "/topic/devices/";
+
+    private final ConcurrentHashMap<String, Map<String, Batch>> sessions = new ConcurrentHashMap<>();
+    private final MessageChannel clientOutboundChannel;
+    private final TelemetryConflator conflator;
+    private final ObjectMapper objectMapper;
+    private final PayloadCodec payloadCodec;
+    private final ScheduledExecutorService timer;
+    private final Counter batchedMessages;
+    private final Counter batchFrames;
+
+    @Value("${app.websocket.batching.max-window-ms}")
+    private long maxWindowMs;
+
+    @Value("${app.websocket.batching.max-size}")
+    private int maxSize;
+
+    public TelemetryBatcher(@Lazy @Qualifier("clientOutboundChannel") MessageChannel clientOutboundChannel,
+                            TelemetryConflator conflator,
+                            ObjectMapper objectMapper,
+                            PayloadCodec payloadCodec,
+                            MeterRegistry meterRegistry) {
+        this.clientOutboundChannel = clientOutboundChannel;
+        this.conflator = conflator;
+        this.objectMapper = objectMapper;
+        this.payloadCodec = payloadCodec;
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "ws-batcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        this.timer = executor;
+
+        this.batchedMessages = Counter.builder("websocket.telemetry.batched.messages").register(meterRegistry);
+        this.batchFrames = Counter.builder("websocket.telemetry.batch.frames").register(meterRegistry);
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (message.getHeaders().containsKey(TelemetryConflator.RELEASED_HEADER)) {
+            return message;
+        }
+        SimpMessageHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, SimpMessageHeaderAccessor.class);
+        if (accessor == null || accessor.getSessionId() == null) {
+            return message;
+        }
+        switch (accessor.getMessageType()) {
+            case SUBSCRIBE -> onSubscribe(accessor);
+            case UNSUBSCRIBE -> onUnsubscribe(accessor.getSessionId(), accessor.getSubscriptionId());
+            case DISCONNECT -> onDisconnect(accessor.getSessionId());
+            case MESSAGE -> {
+                return batch(accessor, message) ? null : message;
+            }
+            default -> {
+            }
+        }
+        return message;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    private void onSubscribe(SimpMessageHeaderAccessor accessor) {
+        String windowHeader = accessor.getFirstNativeHeader(BATCH_MS_HEADER);
+        String sizeHeader = accessor.getFirstNativeHeader(BATCH_SIZE_HEADER);
+        if (windowHeader == null && sizeHeader == null
+                || !TelemetryConflator.isTelemetryDestination(accessor.getDestination())) {
+            return;
+        }
+        long windowMs;
+        int size;
+        try {
+            windowMs = windowHeader != null ? Long.parseLong(windowHeader) : maxWindowMs;
+            size = sizeHeader != null ? Integer.parseInt(sizeHeader) : maxSize;
+        } catch (NumberFormatException e) {
+            return;
+        }
+        if (windowMs <= 0 && size <= 0) {
+            return;
+        }
+        Batch batch = new Batch(accessor.getSessionId(), accessor.getSubscriptionId(), accessor.getDestination(),
+                TimeUnit.MILLISECONDS.toNanos(Math.min(windowMs > 0 ? windowMs : maxWindowMs, maxWindowMs)),
+                Math.min(size > 0 ? size : maxSize, maxSize));
+        sessions.computeIfAbsent(accessor.getSessionId(), id -> new ConcurrentHashMap<>())
+                .put(accessor.getSubscriptionId(), batch);
+    }
+
+    private void onUnsubscribe(String sessionId, String subscriptionId) {
+        Map<String, Batch> batches = sessions.get(sessionId);
+        Batch batch = batches != null && subscriptionId != null ? batches.remove(subscriptionId) : null;
+        if (batch != null) {
+            synchronized (batch) {
+                batch.closed = true;
+                batch.entries.clear();
+            }
+        }
+    }
+
+    private void onDisconnect(String sessionId) {
+        Map<String, Batch> batches = sessions.remove(sessionId);
+        if (batches != null) {
+            batches.values().forEach(batch -> {
+                synchronized (batch) {
+                    batch.closed = true;
+                    batch.entries.clear();
+                }
+            });
+        }
+    }
+
+    private boolean batch(SimpMessageHeaderAccessor accessor, Message<?> message) {
+        Map<String, Batch> batches = sessions.get(accessor.getSessionId());
+        String subscriptionId = accessor.getSubscriptionId();
+        Batch batch = batches != null && subscriptionId != null ? batches.get(subscriptionId) : null;
+        if (batch == null || !(message.getPayload() instanceof byte[] payload)) {
+            return false;
+        }
+        boolean flushNow;
+        synchronized (batch) {
+            if (batch.closed) {
+                return false;
+            }
+            batch.entries.add(new Entry(deviceId(accessor.getDestination()), payload));
+            batchedMessages.increment();
+            scheduleFlush(batch);
+            flushNow = batch.entries.size() >= batch.maxSize;
+        }
+        if (flushNow) {
+            flush(batch);
+        }
+        return true;
+    }
+
+    private void scheduleFlush(Batch batch) {
+        if (batch.timerScheduled) {
+            return;
+        }
+        batch.timerScheduled = true;
+        timer.schedule(() -> {
+            synchronized (batch) {
+                batch.timerScheduled = false;
+            }
+            flush(batch);
+        }, batch.windowNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void flush(Batch batch) {
+        List<Entry> entries;
+        synchronized (batch) {
+            if (batch.closed || batch.entries.isEmpty()) {
+                return;
+            }
+            if (conflator.isBehind(batch.sessionId)) {
+                if (batch.entries.size() >= batch.maxSize) {
+                    latestPerDevice(batch.entries);
+                }
+                scheduleFlush(batch);
+                return;
+            }
+            entries = new ArrayList<>(batch.entries);
+            batch.entries.clear();
+        }
+
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setSessionId(batch.sessionId);
+        headers.setSubscriptionId(batch.subscriptionId);
+        headers.setDestination(batch.destination);
+        headers.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        headers.setHeader(TelemetryConflator.RELEASED_HEADER, Boolean.TRUE);
+        headers.setLeaveMutable(true);
+        clientOutboundChannel.send(MessageBuilder.createMessage(encode(entries), headers.getMessageHeaders()));
+        batchFrames.increment();
+    }
+
+    private byte[] encode(List<Entry> entries) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(entries.size() * 128);
+        out.write('[');
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            if (i > 0) {
+                out.write(',');
+            }
+            out.writeBytes("{\"device_id\":\"".getBytes(StandardCharsets.UTF_8));
+            out.writeBytes(entry.deviceId.getBytes(StandardCharsets.UTF_8));
+            out.writeBytes("\",\"payload\":".getBytes(StandardCharsets.UTF_8));
+            out.writeBytes(jsonValue(entry.payload));
+            out.write('}');
+        }
+        out.write(']');
+        return out.toByteArray();
+    }
+
+    private byte[] jsonValue(byte[] payload) {
+        try {
+            if (PayloadCodec.isCbor(payload)) {
+                return payloadCodec.toJson(payload);
+            }
+            if (PayloadCodec.isJsonContainer(payload)) {
+                return payload;
+            }
+            return objectMapper.writeValueAsBytes(new String(payload, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            return "null".getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void latestPerDevice(List<Entry> entries) {
+        Map<String, Entry> latest = new LinkedHashMap<>();
+        for (Entry entry : entries) {
+            latest.remove(entry.deviceId);
+            latest.put(entry.deviceId, entry);
+        }
+        entries.clear();
+        entries.addAll(latest.values());
+    }
+
+    private static String deviceId(String destination) {
+        int end = destination.indexOf('/', DESTINATION_PREFIX.length());
+        return end > 0 ? destination.substring(DESTINATION_PREFIX.length(), end) : destination;
+    }
+
+    private record Entry(String deviceId, byte[] payload) {}
+
+    private static final class Batch {
+
+        private final String sessionId;
+        private final String subscriptionId;
+        private final String destination;
+        private final long windowNanos;
+        private final int maxSize;
+        private final List<Entry> entries = new ArrayList<>();
+        private boolean timerScheduled;
+        private boolean closed;
+
+        private Batch(String sessionId, String subscriptionId, String destination, long windowNanos, int maxSize) {
+            this.sessionId = sessionId;
+            this.subscriptionId = subscriptionId;
+            this.destination = destination;
+            this.windowNanos = windowNanos;
+            this.maxSize = maxSize;
+        }
+    }
+}
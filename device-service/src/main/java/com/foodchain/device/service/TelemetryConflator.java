@@ -0,0 +1,321 @@
+package com.foodchain.device.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Conflates outbound telemetry frames per session and destination. A frame is passed
+ * through only if the session is keeping up and the subscription's {@code max-hz}
+ * (STOMP SUBSCRIBE header, or the configured default) allows it; otherwise it replaces
+ * the one frame held for that destination, which is released once the session catches
+ * up or the rate interval elapses. A session counts as behind while a write to its
+ * socket has been in progress for longer than {@code lag-threshold-ms}. Status and
+ * control destinations are never touched.
+ */
+@Component
+public class TelemetryConflator implements ChannelInterceptor {
+
+    public static final String MAX_HZ_HEADER = "max-hz";
+
+    static final String RELEASED_HEADER = "conflatorReleased";
+
+    private static final String TELEMETRY_PREFIX = "/topic/devices/";
+    private static final String TELEMETRY_SUFFIX = "/telemetry";
+
+    private final ConcurrentHashMap<String, SessionState> sessions = new ConcurrentHashMap<>();
+    private final MessageChannel clientOutboundChannel;
+    private final ScheduledExecutorService timer;
+    private final Counter conflated;
+    private final Counter outboundFrames;
+    private final Counter outboundBytes;
+
+    @Value("${app.websocket.conflation.enabled}")
+    private boolean enabled;
+
+    @Value("${app.websocket.conflation.lag-threshold-ms}")
+    private long lagThresholdMs;
+
+    @Value("${app.websocket.conflation.default-max-hz}")
+    private double defaultMaxHz;
+
+    public TelemetryConflator(@Lazy @Qualifier("clientOutboundChannel") MessageChannel clientOutboundChannel,
+                              MeterRegistry meterRegistry) {
+        this.clientOutboundChannel = clientOutboundChannel;
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "ws-conflation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        this.timer = executor;
+
+        Gauge.builder("websocket.sessions", sessions, Map::size).register(meterRegistry);
+        this.conflated = Counter.builder("websocket.telemetry.conflated").register(meterRegistry);
+        this.outboundFrames = Counter.builder("websocket.outbound.frames").register(meterRegistry);
+        this.outboundBytes = Counter.builder("websocket.outbound.bytes").baseUnit("bytes").register(meterRegistry);
+    }
+
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                SessionState state = new SessionState(TimeUnit.MILLISECONDS.toNanos(lagThresholdMs));
+                sessions.put(session.getId(), state);
+                super.afterConnectionEstablished(new BacklogTrackingSession(session, state));
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                SessionState state = sessions.remove(session.getId());
+                if (state != null) {
+                    state.closed = true;
+                }
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (!enabled) {
+            return message;
+        }
+        SimpMessageHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, SimpMessageHeaderAccessor.class);
+        if (accessor == null || accessor.getSessionId() == null) {
+            return message;
+        }
+        SimpMessageType type = accessor.getMessageType();
+        if (type == SimpMessageType.SUBSCRIBE) {
+            onSubscribe(accessor);
+            return message;
+        }
+        if (type == SimpMessageType.UNSUBSCRIBE) {
+            SessionState state = sessions.get(accessor.getSessionId());
+            if (state != null) {
+                state.unsubscribe(accessor.getSubscriptionId());
+            }
+            return message;
+        }
+        if (type != SimpMessageType.MESSAGE || message.getHeaders().containsKey(RELEASED_HEADER)
+                || !isTelemetryDestination(accessor.getDestination())) {
+            return message;
+        }
+
+        SessionState state = sessions.get(accessor.getSessionId());
+        if (state == null) {
+            return message;
+        }
+        String subscriptionId = accessor.getSubscriptionId();
+        Slot slot = state.slots.computeIfAbsent(subscriptionId + '|' + accessor.getDestination(),
+                key -> new Slot(subscriptionId, state.interval(subscriptionId, defaultInterval())));
+        long now = System.nanoTime();
+        synchronized (slot) {
+            boolean behind = state.isBehind(now);
+            if (slot.pending == null && !behind && now - slot.lastSent >= slot.minInterval) {
+                slot.lastSent = now;
+                return message;
+            }
+            if (slot.pending == null) {
+                state.pendingCount.incrementAndGet();
+            } else {
+                conflated.increment();
+            }
+            slot.pending = message;
+            scheduleRelease(state, slot, behind ? state.lagThreshold : slot.lastSent + slot.minInterval - now);
+        }
+        return null;
+    }
+
+    public boolean isBehind(String sessionId) {
+        SessionState state = sessions.get(sessionId);
+        return state != null && state.isBehind(System.nanoTime());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    private void onSubscribe(SimpMessageHeaderAccessor accessor) {
+        SessionState state = sessions.get(accessor.getSessionId());
+        if (state == null || !isTelemetryDestination(accessor.getDestination())) {
+            return;
+        }
+        long interval = defaultInterval();
+        String maxHzHeader = accessor.getFirstNativeHeader(MAX_HZ_HEADER);
+        if (maxHzHeader != null) {
+            try {
+                double maxHz = Double.parseDouble(maxHzHeader);
+                if (maxHz > 0) {
+                    interval = Math.max(interval, (long) (TimeUnit.SECONDS.toNanos(1) / maxHz));
+                }
+            } catch (NumberFormatException ignored) {
+                // keep the default rate
+            }
+        }
+        state.intervals.put(accessor.getSubscriptionId(), interval);
+    }
+
+    private void scheduleRelease(SessionState state, Slot slot, long delayNanos) {
+        if (slot.timerScheduled) {
+            return;
+        }
+        slot.timerScheduled = true;
+        timer.schedule(() -> {
+            synchronized (slot) {
+                slot.timerScheduled = false;
+            }
+            release(state, slot);
+        }, Math.max(0, delayNanos), TimeUnit.NANOSECONDS);
+    }
+
+    private void release(SessionState state, Slot slot) {
+        Message<?> message;
+        synchronized (slot) {
+            if (slot.pending == null || state.closed) {
+                return;
+            }
+            long now = System.nanoTime();
+            if (state.isBehind(now)) {
+                scheduleRelease(state, slot, state.lagThreshold);
+                return;
+            }
+            long due = slot.lastSent + slot.minInterval;
+            if (now < due) {
+                scheduleRelease(state, slot, due - now);
+                return;
+            }
+            message = slot.pending;
+            slot.pending = null;
+            slot.lastSent = now;
+            state.pendingCount.decrementAndGet();
+        }
+        clientOutboundChannel.send(MessageBuilder.fromMessage(message).setHeader(RELEASED_HEADER, Boolean.TRUE).build());
+    }
+
+    private void onIdle(SessionState state) {
+        if (state.pendingCount.get() > 0) {
+            state.slots.values().forEach(slot -> release(state, slot));
+        }
+    }
+
+    private long defaultInterval() {
+        return defaultMaxHz > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / defaultMaxHz) : 0;
+    }
+
+    static boolean isTelemetryDestination(String destination) {
+        return destination != null && destination.startsWith(TELEMETRY_PREFIX) && destination.endsWith(TELEMETRY_SUFFIX);
+    }
+
+    private final class BacklogTrackingSession extends WebSocketSessionDecorator {
+
+        private final SessionState state;
+
+        private BacklogTrackingSession(WebSocketSession session, SessionState state) {
+            super(session);
+            this.state = state;
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) throws IOException {
+            state.sendStartedAt = System.nanoTime() | 1;
+            try {
+                super.sendMessage(message);
+                outboundFrames.increment();
+                outboundBytes.increment(message.getPayloadLength());
+            } finally {
+                state.sendStartedAt = 0;
+                onIdle(state);
+            }
+        }
+
+        @Override
+        public void close(CloseStatus status) throws IOException {
+            state.closed = true;
+            super.close(status);
+        }
+    }
+
+    private static final class SessionState {
+
+        private final long lagThreshold;
+        private final ConcurrentHashMap<String, Long> intervals = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<String, Slot> slots = new ConcurrentHashMap<>();
+        private final AtomicInteger pendingCount = new AtomicInteger();
+        private volatile long sendStartedAt;
+        private volatile boolean closed;
+
+        private SessionState(long lagThreshold) {
+            this.lagThreshold = lagThreshold;
+        }
+
+        private boolean isBehind(long now) {
+            long started = sendStartedAt;
+            return started != 0 && now - started > lagThreshold;
+        }
+
+        private long interval(String subscriptionId, long defaultInterval) {
+            return subscriptionId != null ? intervals.getOrDefault(subscriptionId, defaultInterval) : defaultInterval;
+        }
+
+        private void unsubscribe(String subscriptionId) {
+            if (subscriptionId == null) {
+                return;
+            }
+            intervals.remove(subscriptionId);
+            slots.values().removeIf(slot -> {
+                synchronized (slot) {
+                    if (!subscriptionId.equals(slot.subscriptionId)) {
+                        return false;
+                    }
+                    if (slot.pending != null) {
+                        slot.pending = null;
+                        pendingCount.decrementAndGet();
+                    }
+                    return true;
+                }
+            });
+        }
+    }
+
+    private static final class Slot {
+
+        private final String subscriptionId;
+        private final long minInterval;
+        private Message<?> pending;
+        private long lastSent = Long.MIN_VALUE / 2;
+        private boolean timerScheduled;
+
+        private Slot(String subscriptionId, long minInterval) {
+            this.subscriptionId = subscriptionId;
+            this.minInterval = minInterval;
+        }
+    }
+}
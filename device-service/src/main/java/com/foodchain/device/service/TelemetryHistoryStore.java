@@ -0,0 +1,103 @@
+package com.foodchain.device.service;
+
+import com.foodchain.common.dto.device.TelemetryRecentDto;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Holds a {@link TelemetryRingBuffer} per device under a global memory cap. When the
+ * cap is exceeded, the devices that have been idle the longest are evicted.
+ */
+@Component
+public class TelemetryHistoryStore {
+
+    private static final Logger log = LoggerFactory.getLogger(TelemetryHistoryStore.class);
+
+    private final ConcurrentHashMap<UUID, TelemetryRingBuffer> buffers = new ConcurrentHashMap<>();
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final int capacity;
+    private final int maxFields;
+    private final long maxBytes;
+    private final Counter evictions;
+
+    public TelemetryHistoryStore(@Value("${app.telemetry.recent.capacity}") int capacity,
+                                 @Value("${app.telemetry.recent.max-fields}") int maxFields,
+                                 @Value("${app.telemetry.recent.max-memory-mb}") long maxMemoryMb,
+                                 MeterRegistry meterRegistry) {
+        this.capacity = capacity;
+        this.maxFields = maxFields;
+        this.maxBytes = maxMemoryMb * 1024 * 1024;
+
+        Gauge.builder("telemetry.recent.bytes", usedBytes, AtomicLong::get).register(meterRegistry);
+        Gauge.builder("telemetry.recent.devices", buffers, Map::size).register(meterRegistry);
+        this.evictions = Counter.builder("telemetry.recent.evictions").register(meterRegistry);
+    }
+
+    public void record(UUID deviceId, TelemetrySample sample) {
+        TelemetryRingBuffer buffer = buffers.get(deviceId);
+        if (buffer == null) {
+            buffer = buffers.computeIfAbsent(deviceId, id -> {
+                usedBytes.addAndGet(TelemetryRingBuffer.baseBytes(capacity));
+                return new TelemetryRingBuffer(id.toString(), capacity, maxFields);
+            });
+        }
+
+        long allocated = buffer.append(sample);
+        if (allocated > 0 && usedBytes.addAndGet(allocated) > maxBytes) {
+            evictIdle();
+        }
+    }
+
+    public TelemetryRecentDto recent(UUID deviceId, long sinceMillis) {
+        TelemetryRingBuffer buffer = buffers.get(deviceId);
+        if (buffer == null) {
+            return new TelemetryRecentDto(deviceId.toString(), new long[0], Collections.emptyMap());
+        }
+        return buffer.snapshot(sinceMillis);
+    }
+
+    private void evictIdle() {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            long target = maxBytes - maxBytes / 10;
+            List<IdleCandidate> candidates = new ArrayList<>(buffers.size());
+            buffers.forEach((id, buffer) -> candidates.add(new IdleCandidate(id, buffer, buffer.lastWriteMillis())));
+            candidates.sort(Comparator.comparingLong(IdleCandidate::lastWriteMillis));
+
+            int evicted = 0;
+            for (IdleCandidate candidate : candidates) {
+                if (usedBytes.get() <= target) {
+                    break;
+                }
+                if (buffers.remove(candidate.deviceId(), candidate.buffer())) {
+                    usedBytes.addAndGet(-candidate.buffer().evict());
+                    evicted++;
+                }
+            }
+            evictions.increment(evicted);
+            log.debug("Evicted {} idle telemetry buffers, {} bytes in use", evicted, usedBytes.get());
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private record IdleCandidate(UUID deviceId, TelemetryRingBuffer buffer, long lastWriteMillis) {}
+}
@@ -0,0 +1,98 @@
+package com.foodchain.device.service;
+
+import com.foodchain.device.repository.TelemetryJdbcRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Keeps a daily {@code device_telemetry} partition for every day of the retention window
+ * plus {@code premake-days} ahead, and drops whole partitions once they fall outside the
+ * window. There is no DEFAULT partition, so a row for a missing day would fail its whole
+ * insert batch; {@link #writableFromMillis()} and {@link #writableUntilMillis()} report
+ * the range the last successful run covered.
+ */
+@Component
+public class TelemetryPartitionManager {
+
+    private static final Logger log = LoggerFactory.getLogger(TelemetryPartitionManager.class);
+
+    private final TelemetryJdbcRepository telemetryRepository;
+
+    @Value("${app.telemetry.retention-days}")
+    private int retentionDays;
+
+    @Value("${app.telemetry.premake-days}")
+    private int premakeDays;
+
+    private volatile long writableFrom;
+    private volatile long writableUntil;
+
+    public TelemetryPartitionManager(TelemetryJdbcRepository telemetryRepository) {
+        this.telemetryRepository = telemetryRepository;
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        this.writableFrom = startOf(today.minusDays(1));
+        this.writableUntil = startOf(today.plusDays(1));
+    }
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${app.telemetry.maintenance-interval-ms}")
+    public void maintainPartitions() {
+        try {
+            LocalDate today = LocalDate.now(ZoneOffset.UTC);
+            LocalDate oldestKept = today.minusDays(retentionDays);
+            LocalDate newest = today.plusDays(Math.max(premakeDays, 1));
+            for (LocalDate day = oldestKept; !day.isAfter(newest); day = day.plusDays(1)) {
+                telemetryRepository.createPartition(day);
+            }
+            writableFrom = startOf(oldestKept);
+            writableUntil = startOf(newest.plusDays(1));
+
+            for (String name : telemetryRepository.findPartitionNames()) {
+                LocalDate day = partitionDay(name);
+                if (day != null && day.isBefore(oldestKept)) {
+                    telemetryRepository.dropPartition(day);
+                    log.info("Dropped telemetry partition {}", name);
+                }
+            }
+        } catch (DataAccessException e) {
+            log.error("Telemetry partition maintenance failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Earliest timestamp, inclusive, that has a partition to go to.
+     */
+    public long writableFromMillis() {
+        return writableFrom;
+    }
+
+    /**
+     * Timestamp, exclusive, from which no partition has been created yet.
+     */
+    public long writableUntilMillis() {
+        return writableUntil;
+    }
+
+    private static long startOf(LocalDate day) {
+        return day.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+    }
+
+    private static LocalDate partitionDay(String partitionName) {
+        if (!partitionName.startsWith(TelemetryJdbcRepository.PARTITION_PREFIX)) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(partitionName.substring(TelemetryJdbcRepository.PARTITION_PREFIX.length()),
+                    TelemetryJdbcRepository.PARTITION_SUFFIX);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
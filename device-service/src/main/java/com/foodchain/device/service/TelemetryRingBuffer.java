@@ -0,0 +1,126 @@
+package com.foodchain.device.service;
+
+import com.foodchain.common.dto.device.TelemetryRecentDto;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Fixed-capacity, column-oriented ring of the most recent telemetry samples of one
+ * device. Timestamps and each numeric field live in their own primitive array; a
+ * field missing from a sample is stored as NaN.
+ */
+public class TelemetryRingBuffer {
+
+    private final long[] timestamps;
+    private final String[] fieldNames;
+    private final double[][] columns;
+    private final String deviceId;
+    private int fieldCount;
+    private int head;
+    private int size;
+    private boolean evicted;
+    private volatile long lastWriteMillis;
+
+    public TelemetryRingBuffer(String deviceId, int capacity, int maxFields) {
+        this.deviceId = deviceId;
+        this.timestamps = new long[capacity];
+        this.fieldNames = new String[maxFields];
+        this.columns = new double[maxFields][];
+    }
+
+    public static long baseBytes(int capacity) {
+        return 64L + 8L * capacity;
+    }
+
+    public static long columnBytes(int capacity) {
+        return 16L + 8L * capacity;
+    }
+
+    /**
+     * Appends a sample and returns the number of bytes newly allocated for fields
+     * seen for the first time.
+     */
+    public synchronized long append(TelemetrySample sample) {
+        if (evicted) {
+            return 0;
+        }
+        int capacity = timestamps.length;
+        long allocated = 0;
+        for (int c = 0; c < fieldCount; c++) {
+            columns[c][head] = Double.NaN;
+        }
+        for (int i = 0; i < sample.size(); i++) {
+            int column = columnOf(sample.name(i));
+            if (column < 0 && fieldCount < fieldNames.length) {
+                column = fieldCount++;
+                fieldNames[column] = sample.name(i);
+                columns[column] = new double[capacity];
+                Arrays.fill(columns[column], Double.NaN);
+                allocated += columnBytes(capacity);
+            }
+            if (column >= 0) {
+                columns[column][head] = sample.value(i);
+            }
+        }
+        timestamps[head] = sample.timestamp();
+        head = (head + 1) % capacity;
+        if (size < capacity) {
+            size++;
+        }
+        lastWriteMillis = System.currentTimeMillis();
+        return allocated;
+    }
+
+    public synchronized TelemetryRecentDto snapshot(long sinceMillis) {
+        int capacity = timestamps.length;
+        int oldest = (head - size + capacity) % capacity;
+        int[] slots = new int[size];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            int slot = (oldest + i) % capacity;
+            if (timestamps[slot] >= sinceMillis) {
+                slots[count++] = slot;
+            }
+        }
+
+        long[] times = new long[count];
+        for (int i = 0; i < count; i++) {
+            times[i] = timestamps[slots[i]];
+        }
+        Map<String, Double[]> fields = new LinkedHashMap<>();
+        for (int c = 0; c < fieldCount; c++) {
+            Double[] values = new Double[count];
+            double[] column = columns[c];
+            for (int i = 0; i < count; i++) {
+                double value = column[slots[i]];
+                values[i] = Double.isNaN(value) ? null : value;
+            }
+            fields.put(fieldNames[c], values);
+        }
+        return new TelemetryRecentDto(deviceId, times, fields);
+    }
+
+    public synchronized long evict() {
+        evicted = true;
+        return memoryBytes();
+    }
+
+    public long lastWriteMillis() {
+        return lastWriteMillis;
+    }
+
+    private long memoryBytes() {
+        return baseBytes(timestamps.length) + fieldCount * columnBytes(timestamps.length);
+    }
+
+    private int columnOf(String name) {
+        for (int c = 0; c < fieldCount; c++) {
+            if (fieldNames[c].equals(name)) {
+                return c;
+            }
+        }
+        return -1;
+    }
+}
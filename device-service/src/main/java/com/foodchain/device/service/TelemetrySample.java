@@ -0,0 +1,43 @@
+package com.foodchain.device.service;
+
+import java.util.Arrays;
+
+/**
+ * Numeric fields of one telemetry message. A top-level {@code ts} or {@code timestamp}
+ * field (epoch millis) sets the sample time instead of being treated as a metric.
+ */
+public final class TelemetrySample implements JsonFieldExtractor.NumberVisitor {
+
+    private long timestamp;
+    private String[] names = new String[8];
+    private double[] values = new double[8];
+    private int size;
+
+    public TelemetrySample(long receivedAt) {
+        this.timestamp = receivedAt;
+    }
+
+    @Override
+    public void accept(String name, double value) {
+        if ("ts".equals(name) || "timestamp".equals(name)) {
+            timestamp = (long) value;
+            return;
+        }
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        names[size] = name;
+        values[size] = value;
+        size++;
+    }
+
+    public long timestamp() { return timestamp; }
+    public void setTimestamp(long timestamp) { this.timestamp = timestamp; }
+
+    public int size() { return size; }
+
+    public String name(int index) { return names[index]; }
+
+    public double value(int index) { return values[index]; }
+}
@@ -0,0 +1,103 @@
+package com.foodchain.device.service;
+
+import com.foodchain.common.dto.device.TelemetryAggregateDto;
+import com.foodchain.common.dto.device.TelemetryRecentDto;
+import com.foodchain.common.dto.device.TelemetrySeriesDto;
+import com.foodchain.common.exception.BadRequestException;
+import com.foodchain.common.exception.ResourceNotFoundException;
+import com.foodchain.device.repository.TelemetryJdbcRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+@Service
+public class TelemetryService {
+
+    private static final int MAX_METRIC_LENGTH = 64;
+    private static final long MAX_CLOCK_SKEW_MS = Duration.ofDays(1).toMillis();
+
+    private final TelemetryWriteBuffer writeBuffer;
+    private final TelemetryHistoryStore historyStore;
+    private final TelemetryAggregator aggregator;
+    private final TelemetryJdbcRepository telemetryRepository;
+    private final TelemetryPartitionManager partitionManager;
+    private final DeviceOwnerCache ownerCache;
+
+    @Value("${app.telemetry.query.max-points}")
+    private long maxPoints;
+
+    public TelemetryService(TelemetryWriteBuffer writeBuffer,
+                            TelemetryHistoryStore historyStore,
+                            TelemetryAggregator aggregator,
+                            TelemetryJdbcRepository telemetryRepository,
+                            TelemetryPartitionManager partitionManager,
+                            DeviceOwnerCache ownerCache) {
+        this.writeBuffer = writeBuffer;
+        this.historyStore = historyStore;
+        this.aggregator = aggregator;
+        this.telemetryRepository = telemetryRepository;
+        this.partitionManager = partitionManager;
+        this.ownerCache = ownerCache;
+    }
+
+    public void record(UUID deviceId, TelemetrySample sample, long receivedAt, long journalSequence) {
+        // a row without a partition would fail the whole insert batch, not just itself
+        long timestamp = sample.timestamp();
+        if (timestamp < partitionManager.writableFromMillis()
+                || timestamp >= partitionManager.writableUntilMillis()
+                || timestamp > receivedAt + MAX_CLOCK_SKEW_MS) {
+            sample.setTimestamp(receivedAt);
+        }
+        historyStore.record(deviceId, sample);
+        aggregator.record(deviceId, sample);
+
+        timestamp = sample.timestamp();
+        for (int i = 0; i < sample.size(); i++) {
+            String metric = sample.name(i);
+            double value = sample.value(i);
+            if (metric.length() <= MAX_METRIC_LENGTH && Double.isFinite(value)) {
+                writeBuffer.append(deviceId, timestamp, metric, value, journalSequence);
+            }
+        }
+    }
+
+    public List<TelemetrySeriesDto> getTelemetry(UUID deviceId, UUID userId, Long from, Long to, long stepSeconds) {
+        requireOwnedDevice(deviceId, userId);
+
+        long toMs = to != null ? to : System.currentTimeMillis();
+        long fromMs = from != null ? from : toMs - Duration.ofHours(1).toMillis();
+        if (fromMs >= toMs) {
+            throw new BadRequestException("'from' must be before 'to'");
+        }
+        if (stepSeconds < 1) {
+            throw new BadRequestException("'step' must be at least 1 second");
+        }
+        if ((toMs - fromMs) / 1000 / stepSeconds > maxPoints) {
+            throw new BadRequestException("Requested range has more than " + maxPoints + " points per metric; increase 'step'");
+        }
+
+        return telemetryRepository.findDownsampled(deviceId, fromMs, toMs, stepSeconds);
+    }
+
+    public TelemetryRecentDto getRecentTelemetry(UUID deviceId, UUID userId, long windowSeconds) {
+        requireOwnedDevice(deviceId, userId);
+        if (windowSeconds < 1) {
+            throw new BadRequestException("'window' must be at least 1 second");
+        }
+        return historyStore.recent(deviceId, System.currentTimeMillis() - windowSeconds * 1000);
+    }
+
+    public List<TelemetryAggregateDto> getAggregates(UUID deviceId, UUID userId) {
+        requireOwnedDevice(deviceId, userId);
+        return aggregator.aggregates(deviceId);
+    }
+
+    private void requireOwnedDevice(UUID deviceId, UUID userId) {
+        if (!ownerCache.isOwnedBy(deviceId, userId)) {
+            throw new ResourceNotFoundException("Device not found");
+        }
+    }
+}
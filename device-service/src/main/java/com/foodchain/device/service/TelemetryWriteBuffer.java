@@ -0,0 +1,217 @@
+package com.foodchain.device.service;
+
+import com.foodchain.device.repository.TelemetryJdbcRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Collects telemetry points into columnar batches and writes them from a single
+ * background thread with JDBC batch inserts. When the database falls behind and
+ * {@code max-pending-batches} is reached, new batches are dropped rather than
+ * blocking ingest. Dropped points mark the journal records they came from failed,
+ * so they can be replayed.
+ */
+@Component
+public class TelemetryWriteBuffer {
+
+    private static final Logger log = LoggerFactory.getLogger(TelemetryWriteBuffer.class);
+
+    private final TelemetryJdbcRepository telemetryRepository;
+    private final IngestJournal ingestJournal;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final int maxRetries;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayBlockingQueue<Batch> pending;
+    private final ArrayBlockingQueue<Batch> free;
+    private final Thread writer;
+    private final Counter written;
+    private final Counter dropped;
+
+    private Batch current;
+    private volatile boolean running = true;
+
+    public TelemetryWriteBuffer(TelemetryJdbcRepository telemetryRepository,
+                                IngestJournal ingestJournal,
+                                @Value("${app.telemetry.batch-size}") int batchSize,
+                                @Value("${app.telemetry.flush-interval-ms}") long flushIntervalMs,
+                                @Value("${app.telemetry.max-pending-batches}") int maxPendingBatches,
+                                @Value("${app.telemetry.max-retries}") int maxRetries,
+                                MeterRegistry meterRegistry) {
+        this.telemetryRepository = telemetryRepository;
+        this.ingestJournal = ingestJournal;
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.maxRetries = maxRetries;
+        this.pending = new ArrayBlockingQueue<>(maxPendingBatches);
+        this.free = new ArrayBlockingQueue<>(maxPendingBatches + 2);
+        this.current = new Batch(batchSize);
+
+        Gauge.builder("telemetry.write.pending.batches", pending, ArrayBlockingQueue::size).register(meterRegistry);
+        this.written = Counter.builder("telemetry.write.points").tag("result", "written").register(meterRegistry);
+        this.dropped = Counter.builder("telemetry.write.points").tag("result", "dropped").register(meterRegistry);
+
+        this.writer = new Thread(this::runWriter, "telemetry-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public void append(UUID deviceId, long timestamp, String metric, double value, long journalSequence) {
+        Batch full = null;
+        lock.lock();
+        try {
+            current.add(deviceId, timestamp, metric, value, journalSequence);
+            if (current.size == batchSize) {
+                full = current;
+                current = obtainBatch();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (full != null && !pending.offer(full)) {
+            dropped.increment(full.size);
+            log.warn("Telemetry write queue full, dropped {} points", full.size);
+            markFailed(full);
+            recycle(full);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    private void runWriter() {
+        while (running || !pending.isEmpty()) {
+            Batch batch;
+            try {
+                batch = pending.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (batch == null) {
+                batch = takePartialBatch();
+            }
+            if (batch != null) {
+                write(batch);
+                recycle(batch);
+            }
+        }
+
+        Batch last = takePartialBatch();
+        if (last != null) {
+            write(last);
+        }
+    }
+
+    private Batch takePartialBatch() {
+        lock.lock();
+        try {
+            if (current.size == 0) {
+                return null;
+            }
+            Batch partial = current;
+            current = obtainBatch();
+            return partial;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void write(Batch batch) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                telemetryRepository.insert(batch.size, batch.deviceIds, batch.timestamps, batch.metrics, batch.values);
+                written.increment(batch.size);
+                return;
+            } catch (DataAccessException e) {
+                if (attempt > maxRetries || !running) {
+                    dropped.increment(batch.size);
+                    log.error("Dropping {} telemetry points after {} failed attempts", batch.size, attempt, e);
+                    markFailed(batch);
+                    return;
+                }
+                log.warn("Telemetry batch insert failed (attempt {}): {}", attempt, e.getMessage());
+                try {
+                    Thread.sleep(attempt * 200L);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    dropped.increment(batch.size);
+                    markFailed(batch);
+                    return;
+                }
+            }
+        }
+    }
+
+    private void markFailed(Batch batch) {
+        // a message's points are appended together, so repeats are adjacent
+        long previous = -1;
+        for (int i = 0; i < batch.size; i++) {
+            long sequence = batch.sequences[i];
+            if (sequence != previous) {
+                ingestJournal.markFailed(sequence);
+                previous = sequence;
+            }
+        }
+    }
+
+    private Batch obtainBatch() {
+        Batch batch = free.poll();
+        return batch != null ? batch : new Batch(batchSize);
+    }
+
+    private void recycle(Batch batch) {
+        batch.clear();
+        free.offer(batch);
+    }
+
+    private static final class Batch {
+
+        private final UUID[] deviceIds;
+        private final long[] timestamps;
+        private final String[] metrics;
+        private final double[] values;
+        private final long[] sequences;
+        private int size;
+
+        private Batch(int capacity) {
+            this.deviceIds = new UUID[capacity];
+            this.timestamps = new long[capacity];
+            this.metrics = new String[capacity];
+            this.values = new double[capacity];
+            this.sequences = new long[capacity];
+        }
+
+        private void add(UUID deviceId, long timestamp, String metric, double value, long sequence) {
+            deviceIds[size] = deviceId;
+            timestamps[size] = timestamp;
+            metrics[size] = metric;
+            values[size] = value;
+            sequences[size] = sequence;
+            size++;
+        }
+
+        private void clear() {
+            Arrays.fill(deviceIds, 0, size, null);
+            Arrays.fill(metrics, 0, size, null);
+            size = 0;
+        }
+    }
+}
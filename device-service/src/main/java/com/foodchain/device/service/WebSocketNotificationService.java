@@ -1,36 +1,177 @@
 package com.foodchain.device.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.foodchain.device.service.StompSubscriptionRegistry.DeviceDestination;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Pushes device events to STOMP subscribers: to the per-device destination and, wrapped
+ * in a {@code {"device_id", "kind", "payload"}} envelope, to the owner's
+ * {@code /topic/users/{userId}/devices}. Events are also handed to the
+ * {@link DeviceEventBus} for subscribers on other replicas. Events nobody is subscribed
+ * to are dropped before any decoding, serialization or broker dispatch.
+ */
 @Service
 public class WebSocketNotificationService {
 
     private static final Logger log = LoggerFactory.getLogger(WebSocketNotificationService.class);
 
     private final SimpMessagingTemplate messagingTemplate;
+    private final ObjectMapper objectMapper;
+    private final StompSubscriptionRegistry subscriptionRegistry;
+    private final DeviceOwnerCache ownerCache;
+    private final PayloadCodec payloadCodec;
+    private final DeviceEventBus eventBus;
 
-    public WebSocketNotificationService(SimpMessagingTemplate messagingTemplate) {
+    public WebSocketNotificationService(SimpMessagingTemplate messagingTemplate,
+                                        ObjectMapper objectMapper,
+                                        StompSubscriptionRegistry subscriptionRegistry,
+                                        DeviceOwnerCache ownerCache,
+                                        PayloadCodec payloadCodec,
+                                        DeviceEventBus eventBus) {
         this.messagingTemplate = messagingTemplate;
+        this.objectMapper = objectMapper;
+        this.subscriptionRegistry = subscriptionRegistry;
+        this.ownerCache = ownerCache;
+        this.payloadCodec = payloadCodec;
+        this.eventBus = eventBus;
+    }
+
+    @PostConstruct
+    public void init() {
+        eventBus.setLocalDelivery(this::dispatchLocal);
+    }
+
+    /**
+     * Status is never forwarded to other replicas: every replica subscribes to device
+     * status topics directly (see {@code MqttService}), so each already has it.
+     */
+    public void sendDeviceStatus(String deviceId, byte[] payload) {
+        dispatchLocal(deviceId, DeviceDestination.STATUS, payload);
+    }
+
+    public void sendDeviceControl(String deviceId, byte[] payload) {
+        send(deviceId, DeviceDestination.CONTROL, payload);
+    }
+
+    public void sendDeviceTelemetry(String deviceId, byte[] payload) {
+        send(deviceId, DeviceDestination.TELEMETRY, payload);
+    }
+
+    public void sendTelemetrySummary(String deviceId, Object summary) {
+        sendJson(deviceId, DeviceDestination.TELEMETRY_SUMMARY, summary);
+    }
+
+    public void sendCommandResult(String deviceId, Object result) {
+        sendJson(deviceId, DeviceDestination.COMMANDS, result);
+    }
+
+    private void send(String deviceId, DeviceDestination kind, byte[] payload) {
+        dispatchLocal(deviceId, kind, payload);
+        eventBus.publish(deviceId, kind, payload);
+    }
+
+    private void sendJson(String deviceId, DeviceDestination kind, Object body) {
+        if (subscriptionRegistry.observedDestination(deviceId, kind) == null && userDestination(deviceId) == null
+                && !eventBus.hasRemoteSubscribers()) {
+            return;
+        }
+        try {
+            send(deviceId, kind, objectMapper.writeValueAsBytes(body));
+        } catch (JsonProcessingException e) {
+            log.error("Error serializing {} message for device {}", kind, deviceId, e);
+        }
+    }
+
+    /** Delivers to subscribers on this node only; also the entry point for events from other replicas. */
+    private void dispatchLocal(String deviceId, DeviceDestination kind, byte[] payload) {
+        String destination = subscriptionRegistry.observedDestination(deviceId, kind);
+        String userDestination = userDestination(deviceId);
+        if (destination == null && userDestination == null) {
+            return;
+        }
+        boolean cbor = PayloadCodec.isCbor(payload);
+        try {
+            if (destination != null) {
+                if (cbor) {
+                    sendCbor(destination, payload);
+                } else {
+                    sendText(destination, new String(payload, StandardCharsets.UTF_8));
+                }
+            }
+            if (userDestination != null) {
+                sendText(userDestination, envelope(deviceId, kind, jsonValue(payload, cbor)));
+            }
+        } catch (IOException e) {
+            log.error("Error encoding {} message for device {}", kind, deviceId, e);
+        }
+    }
+
+    /**
+     * CBOR payloads are handed to the broker as-is; {@link StompPayloadEncoder} converts
+     * them per subscription, so CBOR subscribers get the device's bytes unchanged.
+     */
+    private void sendCbor(String destination, byte[] payload) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create();
+        headers.setContentType(PayloadCodec.APPLICATION_CBOR);
+        headers.setLeaveMutable(true);
+        messagingTemplate.send(destination, MessageBuilder.createMessage(payload, headers.getMessageHeaders()));
+        if (log.isDebugEnabled()) {
+            log.debug("Sent WebSocket message to {}", destination);
+        }
+    }
+
+    private String jsonValue(byte[] payload, boolean cbor) throws IOException {
+        if (cbor) {
+            return new String(payloadCodec.toJson(payload), StandardCharsets.UTF_8);
+        }
+        String body = new String(payload, StandardCharsets.UTF_8);
+        return PayloadCodec.isJsonContainer(payload) ? body : objectMapper.writeValueAsString(body);
     }
 
-    public void sendDeviceStatus(String deviceId, String payload) {
-        String destination = "/topic/devices/" + deviceId + "/status";
-        messagingTemplate.convertAndSend(destination, payload);
-        log.debug("Sent WebSocket message to {}", destination);
+    private void sendText(String destination, String body) {
+        messagingTemplate.convertAndSend(destination, body);
+        if (log.isDebugEnabled()) {
+            log.debug("Sent WebSocket message to {}", destination);
+        }
     }
 
-    public void sendDeviceControl(String deviceId, String payload) {
-        String destination = "/topic/devices/" + deviceId + "/control";
-        messagingTemplate.convertAndSend(destination, payload);
-        log.debug("Sent WebSocket message to {}", destination);
+    /**
+     * Runs on the ingest thread, so the owner comes from the cache only. The first events of
+     * a device this replica has not resolved yet skip the user topic until the owner cache's
+     * next batch lookup.
+     */
+    private String userDestination(String deviceId) {
+        if (!subscriptionRegistry.hasUserSubscriptions()) {
+            return null;
+        }
+        UUID owner;
+        try {
+            owner = ownerCache.cachedOwner(UUID.fromString(deviceId));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return owner != null ? subscriptionRegistry.observedUserDestination(owner.toString()) : null;
     }
 
-    public void sendDeviceTelemetry(String deviceId, String payload) {
-        String destination = "/topic/devices/" + deviceId + "/telemetry";
-        messagingTemplate.convertAndSend(destination, payload);
-        log.debug("Sent WebSocket message to {}", destination);
+    /** Device ids reaching this point are UUIDs, so they need no escaping. */
+    private static String envelope(String deviceId, DeviceDestination kind, String json) {
+        return new StringBuilder(json.length() + deviceId.length() + 48)
+                .append("{\"device_id\":\"").append(deviceId)
+                .append("\",\"kind\":\"").append(kind.kind())
+                .append("\",\"payload\":").append(json)
+                .append('}')
+                .toString();
     }
 }
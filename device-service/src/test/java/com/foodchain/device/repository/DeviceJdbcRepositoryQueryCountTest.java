@@ -0,0 +1,132 @@
+package com.foodchain.device.repository;
+
+import com.foodchain.common.dto.device.DeviceDto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Guards {@link DeviceJdbcRepository#findDevicesByUserId} against N+1 regressions: a user
+ * with any number of devices, each with controls, is read with exactly two statements.
+ * Runs on in-memory H2 in PostgreSQL mode behind a {@code DataSource} that counts every
+ * statement the repository prepares.
+ */
+class DeviceJdbcRepositoryQueryCountTest {
+
+    private static final String SCHEMA_DEVICES = """
+            CREATE TABLE devices (
+                id UUID PRIMARY KEY,
+                user_id UUID NOT NULL,
+                name VARCHAR(255) NOT NULL,
+                type VARCHAR(50) NOT NULL,
+                is_online BOOLEAN NOT NULL DEFAULT FALSE,
+                latitude DOUBLE PRECISION,
+                longitude DOUBLE PRECISION,
+                address VARCHAR(500),
+                location_label VARCHAR(255),
+                mqtt_topic_prefix VARCHAR(255),
+                created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+                updated_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP
+            )""";
+
+    private static final String SCHEMA_CONTROLS = """
+            CREATE TABLE device_controls (
+                id UUID PRIMARY KEY,
+                device_id UUID NOT NULL REFERENCES devices(id) ON DELETE CASCADE,
+                name VARCHAR(255) NOT NULL,
+                control_type VARCHAR(50) NOT NULL,
+                current_value VARCHAR(255),
+                min_value FLOAT,
+                max_value FLOAT,
+                step FLOAT,
+                options TEXT,
+                mqtt_topic VARCHAR(255)
+            )""";
+
+    private static final int CONTROLS_PER_DEVICE = 3;
+
+    private final AtomicInteger statements = new AtomicInteger();
+    private JdbcTemplate seed;
+    private DeviceJdbcRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource h2 = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1", "sa", "");
+        seed = new JdbcTemplate(h2);
+        seed.execute(SCHEMA_DEVICES);
+        seed.execute(SCHEMA_CONTROLS);
+        repository = new DeviceJdbcRepository(new JdbcTemplate(new CountingDataSource(h2, statements)));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 10, 100})
+    void readsAllDevicesOfAUserWithTwoStatements(int deviceCount) {
+        UUID userId = UUID.randomUUID();
+        insertDevices(userId, deviceCount);
+        insertDevices(UUID.randomUUID(), 5);
+
+        List<DeviceDto> devices = repository.findDevicesByUserId(userId, (id, stored) -> stored);
+
+        assertThat(statements.get()).isEqualTo(2);
+        assertThat(devices).hasSize(deviceCount);
+        assertThat(devices).allSatisfy(device -> assertThat(device.controls()).hasSize(CONTROLS_PER_DEVICE));
+    }
+
+    private void insertDevices(UUID userId, int count) {
+        for (int i = 0; i < count; i++) {
+            UUID deviceId = UUID.randomUUID();
+            seed.update("INSERT INTO devices (id, user_id, name, type, is_online) VALUES (?, ?, ?, 'LIGHT', ?)",
+                    deviceId, userId, "device-" + i, i % 2 == 0);
+            for (int c = 0; c < CONTROLS_PER_DEVICE; c++) {
+                seed.update("INSERT INTO device_controls (id, device_id, name, control_type, current_value) "
+                        + "VALUES (?, ?, ?, 'TOGGLE', 'false')", UUID.randomUUID(), deviceId, "control-" + c);
+            }
+        }
+    }
+
+    /**
+     * Hands out connections that count every {@code prepareStatement}, {@code prepareCall}
+     * and {@code createStatement} before delegating.
+     */
+    private static final class CountingDataSource extends DelegatingDataSource {
+
+        private final AtomicInteger statements;
+
+        CountingDataSource(DriverManagerDataSource target, AtomicInteger statements) {
+            super(target);
+            this.statements = statements;
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            Connection connection = super.getConnection();
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+                        String name = method.getName();
+                        if (name.equals("prepareStatement") || name.equals("prepareCall")
+                                || name.equals("createStatement")) {
+                            statements.incrementAndGet();
+                        }
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+        }
+    }
+}
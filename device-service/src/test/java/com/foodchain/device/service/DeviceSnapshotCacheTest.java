@@ -0,0 +1,74 @@
+package com.foodchain.device.service;
+
+import com.foodchain.common.dto.device.DeviceDto;
+import com.foodchain.device.repository.DeviceListingVersionJdbcRepository;
+import com.foodchain.device.repository.DeviceListingVersionJdbcRepository.VersionChange;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that listing versions are read from the database once per user, that a bump
+ * seen by the refresh poll reloads the listing, and that ETags never match across users.
+ */
+class DeviceSnapshotCacheTest {
+
+    private final DeviceListingVersionJdbcRepository versionRepository = mock(DeviceListingVersionJdbcRepository.class);
+    private final DeviceSnapshotCache cache =
+            new DeviceSnapshotCache(versionRepository, 1000, 60_000, 1000, 5000, new SimpleMeterRegistry());
+
+    @Test
+    void readsTheVersionOnceAndTagsItWithTheUser() {
+        UUID alice = UUID.randomUUID();
+        UUID bob = UUID.randomUUID();
+        when(versionRepository.find(any())).thenReturn(3L);
+
+        long version = cache.version(alice);
+        cache.version(alice);
+
+        assertThat(version).isEqualTo(3);
+        verify(versionRepository, times(1)).find(alice);
+        assertThat(cache.etag(alice, version)).isEqualTo("W/\"" + alice + "-3\"");
+        assertThat(cache.etag(alice, version)).isNotEqualTo(cache.etag(bob, cache.version(bob)));
+    }
+
+    @Test
+    void reloadsTheListingOnceARefreshSeesABump() {
+        UUID user = UUID.randomUUID();
+        OffsetDateTime start = OffsetDateTime.now();
+        when(versionRepository.now()).thenReturn(start);
+        when(versionRepository.find(user)).thenReturn(1L);
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.refreshVersions();
+        cache.devices(user, cache.version(user), id -> load(loads));
+        cache.devices(user, cache.version(user), id -> load(loads));
+        assertThat(loads).hasValue(1);
+
+        when(versionRepository.findChangedSince(any()))
+                .thenReturn(List.of(new VersionChange(user, 2, start.plusSeconds(1))));
+        cache.refreshVersions();
+
+        long version = cache.version(user);
+        assertThat(version).isEqualTo(2);
+        cache.devices(user, version, id -> load(loads));
+        assertThat(loads).hasValue(2);
+        verify(versionRepository, times(1)).find(user);
+    }
+
+    private static List<DeviceDto> load(AtomicInteger loads) {
+        loads.incrementAndGet();
+        return List.of();
+    }
+}
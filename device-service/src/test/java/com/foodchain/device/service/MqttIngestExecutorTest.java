@@ -0,0 +1,76 @@
+package com.foodchain.device.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Fills a single-worker executor while its worker is busy and checks that a queued task
+ * evicted by the overflow policy has its journal sequence marked failed, not just the
+ * rejected new one.
+ */
+class MqttIngestExecutorTest {
+
+    private final IngestJournal journal = mock(IngestJournal.class);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private MqttIngestExecutor executor;
+
+    @AfterEach
+    void close() {
+        release.countDown();
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void dropOldestMarksTheEvictedTaskFailed() throws Exception {
+        executor = blockedExecutor(IngestOverflowPolicy.DROP_OLDEST);
+
+        assertThat(executor.submit("device", true, 1, () -> {})).isTrue();
+        assertThat(executor.submit("device", true, 2, () -> {})).isTrue();
+
+        verify(journal).markFailed(1);
+        verify(journal, never()).markFailed(2);
+    }
+
+    @Test
+    void shedTelemetryMarksTheEvictedTaskFailed() throws Exception {
+        executor = blockedExecutor(IngestOverflowPolicy.SHED_TELEMETRY);
+
+        assertThat(executor.submit("device", true, 1, () -> {})).isTrue();
+        assertThat(executor.submit("device", false, 2, () -> {})).isTrue();
+        assertThat(executor.submit("device", true, 3, () -> {})).isFalse();
+
+        verify(journal).markFailed(1);
+        verify(journal, never()).markFailed(2);
+        verify(journal).markFailed(3);
+    }
+
+    /**
+     * Returns an executor with one worker and room for one queued task, whose worker is
+     * stuck on a task until the test ends.
+     */
+    private MqttIngestExecutor blockedExecutor(IngestOverflowPolicy policy) throws InterruptedException {
+        MqttIngestExecutor blocked = new MqttIngestExecutor(1, 1, policy, 1000, journal, new SimpleMeterRegistry());
+        CountDownLatch started = new CountDownLatch(1);
+        blocked.submit("device", false, 0, () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        return blocked;
+    }
+}
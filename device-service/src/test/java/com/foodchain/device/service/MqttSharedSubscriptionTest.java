@@ -0,0 +1,184 @@
+package com.foodchain.device.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hivemq.embedded.EmbeddedHiveMQ;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Runs two {@link MqttService} replicas against an embedded broker with shared
+ * subscriptions enabled and checks that the broker splits telemetry between them, each
+ * message being handled exactly once, while status messages still reach every replica.
+ */
+class MqttSharedSubscriptionTest {
+
+    private static final int TELEMETRY_MESSAGES = 200;
+    private static final int STATUS_MESSAGES = 10;
+
+    @TempDir
+    Path tempDir;
+
+    private EmbeddedHiveMQ broker;
+    private String brokerUrl;
+    private final List<Replica> replicas = new ArrayList<>();
+    private MqttAsyncClient device;
+
+    @BeforeEach
+    void startBroker() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        Path config = Files.createDirectories(tempDir.resolve("conf"));
+        Files.writeString(config.resolve("config.xml"), """
+                <hivemq>
+                    <listeners>
+                        <tcp-listener>
+                            <port>%d</port>
+                            <bind-address>127.0.0.1</bind-address>
+                        </tcp-listener>
+                    </listeners>
+                    <persistence>
+                        <mode>in-memory</mode>
+                    </persistence>
+                    <anonymous-usage-statistics>
+                        <enabled>false</enabled>
+                    </anonymous-usage-statistics>
+                </hivemq>
+                """.formatted(port));
+        broker = EmbeddedHiveMQ.builder()
+                .withConfigurationFolder(config)
+                .withDataFolder(Files.createDirectories(tempDir.resolve("data")))
+                .withExtensionsFolder(Files.createDirectories(tempDir.resolve("extensions")))
+                .build();
+        broker.start().get(60, TimeUnit.SECONDS);
+        brokerUrl = "tcp://127.0.0.1:" + port;
+    }
+
+    @AfterEach
+    void stopBroker() throws Exception {
+        for (Replica replica : replicas) {
+            replica.close();
+        }
+        if (device != null) {
+            device.disconnect().waitForCompletion(5000);
+            device.close();
+        }
+        broker.close();
+    }
+
+    @Test
+    void sharedSubscriptionHandlesEachTelemetryMessageOnce() throws Exception {
+        CountDownLatch handled = new CountDownLatch(TELEMETRY_MESSAGES);
+        replicas.add(new Replica("replica-a", handled));
+        replicas.add(new Replica("replica-b", handled));
+        // subscriptions are asynchronous
+        Thread.sleep(1000);
+
+        device = connect("device-simulator");
+        List<UUID> deviceIds = List.of(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID());
+        for (int i = 0; i < TELEMETRY_MESSAGES; i++) {
+            UUID deviceId = deviceIds.get(i % deviceIds.size());
+            byte[] payload = ("{\"temperature\":" + i + "}").getBytes(StandardCharsets.UTF_8);
+            device.publish("devices/" + deviceId + "/telemetry", payload, 1, false).waitForCompletion(5000);
+        }
+        for (int i = 0; i < STATUS_MESSAGES; i++) {
+            byte[] payload = "{\"is_online\":true}".getBytes(StandardCharsets.UTF_8);
+            device.publish("devices/" + deviceIds.get(0) + "/status", payload, 1, false).waitForCompletion(5000);
+        }
+
+        assertThat(handled.await(30, TimeUnit.SECONDS)).isTrue();
+        for (Replica replica : replicas) {
+            verify(replica.presenceTracker, timeout(10000).times(STATUS_MESSAGES)).reportStatus(eq(deviceIds.get(0)), eq(true), anyLong());
+        }
+        // give any duplicate deliveries time to show up
+        Thread.sleep(500);
+
+        int a = replicas.get(0).telemetry.get();
+        int b = replicas.get(1).telemetry.get();
+        assertThat(a + b).isEqualTo(TELEMETRY_MESSAGES);
+        assertThat(a).isPositive();
+        assertThat(b).isPositive();
+    }
+
+    private MqttAsyncClient connect(String clientId) throws Exception {
+        MqttAsyncClient client = new MqttAsyncClient(brokerUrl, clientId, new MemoryPersistence());
+        MqttConnectOptions options = new MqttConnectOptions();
+        options.setCleanSession(true);
+        options.setMaxInflight(1000);
+        client.connect(options).waitForCompletion(10000);
+        return client;
+    }
+
+    private final class Replica {
+
+        private final MqttAsyncClient client;
+        private final MqttIngestExecutor executor;
+        private final DevicePresenceTracker presenceTracker = mock(DevicePresenceTracker.class);
+        private final AtomicInteger telemetry = new AtomicInteger();
+
+        private Replica(String clientId, CountDownLatch handled) throws Exception {
+            client = connect(clientId);
+            SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+            IngestJournal journal = new IngestJournal(false, tempDir.toString(), 1, 1, 1, meterRegistry);
+            executor = new MqttIngestExecutor(2, 1000, IngestOverflowPolicy.BLOCK, 1000, journal, meterRegistry);
+
+            TelemetryService telemetryService = mock(TelemetryService.class);
+            doAnswer(invocation -> {
+                telemetry.incrementAndGet();
+                handled.countDown();
+                return null;
+            }).when(telemetryService).record(any(), any(), anyLong(), anyLong());
+
+            MqttService service = new MqttService(client,
+                    mock(MqttPublisher.class),
+                    presenceTracker,
+                    mock(WebSocketNotificationService.class),
+                    new JsonFieldExtractor(new PayloadCodec(new ObjectMapper())),
+                    executor,
+                    new MqttTopicRouter(),
+                    telemetryService,
+                    journal);
+            ReflectionTestUtils.setField(service, "qos", 1);
+            ReflectionTestUtils.setField(service, "sharedSubscription", true);
+            ReflectionTestUtils.setField(service, "sharedGroup", "device-service");
+            service.init();
+            service.subscribeOnStartup();
+        }
+
+        private void close() throws Exception {
+            client.disconnect().waitForCompletion(5000);
+            client.close();
+            executor.shutdown();
+        }
+    }
+}
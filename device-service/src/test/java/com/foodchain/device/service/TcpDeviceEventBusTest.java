@@ -0,0 +1,92 @@
+package com.foodchain.device.service;
+
+import com.foodchain.device.service.StompSubscriptionRegistry.DeviceDestination;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Wires two {@link TcpDeviceEventBus} nodes to each other on loopback and checks that an
+ * event published on one reaches a subscriber on the other, and that events nobody
+ * subscribed to are not forwarded.
+ */
+class TcpDeviceEventBusTest {
+
+    private static final TcpDeviceEventBus.Settings SETTINGS =
+            new TcpDeviceEventBus.Settings(0, 10, 500, 1000, 50, 200);
+
+    private TcpDeviceEventBus publisher;
+    private TcpDeviceEventBus subscriber;
+
+    @AfterEach
+    void close() {
+        if (subscriber != null) {
+            subscriber.close();
+        }
+        if (publisher != null) {
+            publisher.close();
+        }
+    }
+
+    @Test
+    void forwardsOnlyEventsThePeerSubscribedTo() throws Exception {
+        String watched = UUID.randomUUID().toString();
+        String unwatched = UUID.randomUUID().toString();
+
+        StompSubscriptionRegistry subscriberRegistry = new StompSubscriptionRegistry(new SimpleMeterRegistry());
+        SimpMessageHeaderAccessor subscribe = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        subscribe.setSessionId("session-1");
+        subscribe.setSubscriptionId("sub-0");
+        subscribe.setDestination(DeviceDestination.TELEMETRY.destination(watched));
+        subscriberRegistry.preSend(MessageBuilder.createMessage(new byte[0], subscribe.getMessageHeaders()), null);
+
+        AtomicReference<InetSocketAddress> publisherAddress = new AtomicReference<>();
+        AtomicReference<InetSocketAddress> subscriberAddress = new AtomicReference<>();
+        publisher = new TcpDeviceEventBus(new StompSubscriptionRegistry(new SimpleMeterRegistry()),
+                mock(DeviceOwnerCache.class), () -> peers(subscriberAddress), SETTINGS, new SimpleMeterRegistry());
+        subscriber = new TcpDeviceEventBus(subscriberRegistry,
+                mock(DeviceOwnerCache.class), () -> peers(publisherAddress), SETTINGS, new SimpleMeterRegistry());
+
+        BlockingQueue<String> delivered = new LinkedBlockingQueue<>();
+        subscriber.setLocalDelivery((deviceId, kind, payload) ->
+                delivered.add(deviceId + " " + kind + " " + new String(payload, StandardCharsets.UTF_8)));
+
+        publisher.start();
+        subscriber.start();
+        publisherAddress.set(new InetSocketAddress("127.0.0.1", publisher.port()));
+        subscriberAddress.set(new InetSocketAddress("127.0.0.1", subscriber.port()));
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!publisher.hasRemoteSubscribers() && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(publisher.hasRemoteSubscribers()).isTrue();
+
+        publisher.publish(unwatched, DeviceDestination.TELEMETRY, "{\"t\":1}".getBytes(StandardCharsets.UTF_8));
+        publisher.publish(watched, DeviceDestination.TELEMETRY, "{\"t\":2}".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(delivered.poll(10, TimeUnit.SECONDS))
+                .isEqualTo(watched + " " + DeviceDestination.TELEMETRY + " {\"t\":2}");
+        assertThat(delivered.poll(200, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    private static List<InetSocketAddress> peers(AtomicReference<InetSocketAddress> address) {
+        InetSocketAddress peer = address.get();
+        return peer != null ? List.of(peer) : List.of();
+    }
+}
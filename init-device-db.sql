@@ -15,9 +15,13 @@ CREATE TABLE IF NOT EXISTS devices (
     location_label VARCHAR(255),
     mqtt_topic_prefix VARCHAR(255),
     created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW(),
-    updated_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW()
+    updated_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW(),
+    online_changed_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW()
 );
 
+-- presence writes stamp online_changed_at instead of updated_at, so delta sync only resends edited devices
+ALTER TABLE devices ADD COLUMN IF NOT EXISTS online_changed_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW();
+
 -- Device controls table
 CREATE TABLE IF NOT EXISTS device_controls (
     id UUID PRIMARY KEY DEFAULT gen_random_uuid(),
@@ -32,9 +36,44 @@ CREATE TABLE IF NOT EXISTS device_controls (
     mqtt_topic VARCHAR(255)
 );
 
-CREATE INDEX IF NOT EXISTS idx_devices_user_id ON devices(user_id);
+CREATE INDEX IF NOT EXISTS idx_devices_user_created ON devices(user_id, created_at, id);
+CREATE INDEX IF NOT EXISTS idx_devices_user_type_created ON devices(user_id, type, created_at, id);
+CREATE INDEX IF NOT EXISTS idx_devices_user_online_created ON devices(user_id, is_online, created_at, id);
+CREATE INDEX IF NOT EXISTS idx_devices_user_location_label_created ON devices(user_id, location_label, created_at, id);
+CREATE INDEX IF NOT EXISTS idx_devices_user_lat_lon ON devices(user_id, latitude, longitude);
+CREATE INDEX IF NOT EXISTS idx_devices_user_updated ON devices(user_id, updated_at);
+CREATE INDEX IF NOT EXISTS idx_devices_user_online_changed ON devices(user_id, online_changed_at);
+CREATE INDEX IF NOT EXISTS idx_device_controls_name_device_id ON device_controls(name, device_id);
 CREATE INDEX IF NOT EXISTS idx_device_controls_device_id ON device_controls(device_id);
 
+-- Per-user listing version, bumped when a device or its controls are created, updated or deleted (snapshot cache validation)
+CREATE TABLE IF NOT EXISTS device_listing_versions (
+    user_id UUID PRIMARY KEY,
+    version BIGINT NOT NULL,
+    changed_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW()
+);
+
+CREATE INDEX IF NOT EXISTS idx_device_listing_versions_changed ON device_listing_versions(changed_at);
+
+-- Deleted devices, kept for delta sync (purged by device-service after the retention period)
+CREATE TABLE IF NOT EXISTS device_tombstones (
+    device_id UUID PRIMARY KEY,
+    user_id UUID NOT NULL,
+    deleted_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW()
+);
+
+CREATE INDEX IF NOT EXISTS idx_device_tombstones_user_deleted ON device_tombstones(user_id, deleted_at);
+
+-- Device telemetry (daily partitions are created and dropped by device-service)
+CREATE TABLE IF NOT EXISTS device_telemetry (
+    device_id UUID NOT NULL,
+    ts TIMESTAMP WITH TIME ZONE NOT NULL,
+    metric VARCHAR(64) NOT NULL,
+    value DOUBLE PRECISION NOT NULL
+) PARTITION BY RANGE (ts);
+
+CREATE INDEX IF NOT EXISTS idx_device_telemetry_device_ts ON device_telemetry(device_id, ts);
+
 -- ============================================
 -- Seed Data (user_id references auth_db users)
 -- ============================================